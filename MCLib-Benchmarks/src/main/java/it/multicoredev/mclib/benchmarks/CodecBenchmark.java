@@ -0,0 +1,371 @@
+package it.multicoredev.mclib.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import it.multicoredev.mclib.network.PacketByteBuf;
+import it.multicoredev.mclib.network.PacketDecoder;
+import it.multicoredev.mclib.network.PacketEncoder;
+import it.multicoredev.mclib.network.PacketFrameDecoder;
+import it.multicoredev.mclib.network.protocol.Packet;
+import it.multicoredev.mclib.network.protocol.PacketField;
+import it.multicoredev.mclib.network.protocol.PacketListener;
+import it.multicoredev.mclib.network.protocol.PacketRegistry;
+import it.multicoredev.mclib.network.protocol.PacketSchema;
+import it.multicoredev.mclib.network.protocol.PacketSchemas;
+import it.multicoredev.mclib.network.protocol.SchemaPacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib.
+ * MCLib is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CodecBenchmark {
+    private static final int MAX_FRAME_LENGTH = 8 * 1024 * 1024;
+
+    /**
+     * The packet encoded and decoded, run with {@code -prof gc} to get the allocation rate of each one.
+     */
+    @Param({"primitives", "primitives-generated", "primitives-reflective", "strings", "json", "blob"})
+    public String packet;
+
+    @Param({"65536"})
+    public int blobSize;
+
+    private Packet<?> instance;
+    private EmbeddedChannel encoder;
+    private EmbeddedChannel decoder;
+    private ByteBuf frame;
+
+    @Setup
+    public void setup() throws Exception {
+        PacketRegistry registry = new PacketRegistry();
+        registry.registerPacket(PrimitivesPacket.class, PrimitivesPacket::new);
+        registry.registerPacket(StringsPacket.class, StringsPacket::new);
+        registry.registerPacket(JsonPacket.class, JsonPacket::new);
+        registry.registerPacket(BlobPacket.class, BlobPacket::new);
+        registry.registerPacket(GeneratedPrimitivesPacket.class, GeneratedPrimitivesPacket::new);
+        registry.registerPacket(ReflectivePrimitivesPacket.class, ReflectivePrimitivesPacket::new);
+
+        instance = newPacket(packet, blobSize);
+        encoder = new EmbeddedChannel(new PacketEncoder(registry, true, null));
+        decoder = new EmbeddedChannel(new PacketFrameDecoder(MAX_FRAME_LENGTH), new PacketDecoder(registry, null));
+        frame = PacketEncoder.encode(PooledByteBufAllocator.DEFAULT, registry, instance);
+    }
+
+    @TearDown
+    public void tearDown() {
+        encoder.finishAndReleaseAll();
+        decoder.finishAndReleaseAll();
+        frame.release();
+    }
+
+    /**
+     * Encode the packet in a frame with the {@link PacketEncoder} of the pipeline.
+     */
+    @Benchmark
+    public int encode() {
+        encoder.writeOutbound(instance);
+        ByteBuf out = encoder.readOutbound();
+        try {
+            return out.readableBytes();
+        } finally {
+            out.release();
+        }
+    }
+
+    /**
+     * Split the frame and decode the packet with the {@link PacketFrameDecoder} and the {@link PacketDecoder}
+     * of the pipeline.
+     */
+    @Benchmark
+    public Object decode() {
+        decoder.writeInbound(frame.retainedDuplicate());
+        return decoder.readInbound();
+    }
+
+    static Packet<?> newPacket(String type, int blobSize) {
+        Random random = new Random(42);
+        switch (type) {
+            case "primitives":
+                return new PrimitivesPacket(random);
+            case "primitives-generated":
+                return new GeneratedPrimitivesPacket().fill(random);
+            case "primitives-reflective":
+                return new ReflectivePrimitivesPacket().fill(random);
+            case "strings":
+                return new StringsPacket(random);
+            case "json":
+                return new JsonPacket(random);
+            case "blob":
+                byte[] blob = new byte[blobSize];
+                random.nextBytes(blob);
+                return new BlobPacket(blob);
+            default:
+                throw new IllegalArgumentException("Unknown packet " + type);
+        }
+    }
+
+    public static class PrimitivesPacket implements Packet<PacketListener> {
+        private int id;
+        private long timestamp;
+        private double x;
+        private double y;
+        private double z;
+        private float yaw;
+        private float pitch;
+        private boolean onGround;
+        private int sequence;
+
+        public PrimitivesPacket() {
+        }
+
+        PrimitivesPacket(Random random) {
+            id = random.nextInt();
+            timestamp = random.nextLong();
+            x = random.nextDouble();
+            y = random.nextDouble();
+            z = random.nextDouble();
+            yaw = random.nextFloat();
+            pitch = random.nextFloat();
+            onGround = random.nextBoolean();
+            sequence = random.nextInt(1 << 20);
+        }
+
+        @Override
+        public void encode(PacketByteBuf buf) {
+            buf.writeInt(id);
+            buf.writeLong(timestamp);
+            buf.writeDouble(x);
+            buf.writeDouble(y);
+            buf.writeDouble(z);
+            buf.writeFloat(yaw);
+            buf.writeFloat(pitch);
+            buf.writeBoolean(onGround);
+            buf.writeVarInt(sequence);
+        }
+
+        @Override
+        public void decode(PacketByteBuf buf) {
+            id = buf.readInt();
+            timestamp = buf.readLong();
+            x = buf.readDouble();
+            y = buf.readDouble();
+            z = buf.readDouble();
+            yaw = buf.readFloat();
+            pitch = buf.readFloat();
+            onGround = buf.readBoolean();
+            sequence = buf.readVarInt();
+        }
+
+        @Override
+        public void processPacket(PacketListener handler) {
+        }
+    }
+
+    /**
+     * The fields of {@link PrimitivesPacket} encoded by the schema generated by the annotation processor.
+     */
+    public static class GeneratedPrimitivesPacket extends SchemaPacket<PacketListener> {
+        @PacketField(order = 0)
+        int id;
+        @PacketField(order = 1)
+        long timestamp;
+        @PacketField(order = 2)
+        double x;
+        @PacketField(order = 3)
+        double y;
+        @PacketField(order = 4)
+        double z;
+        @PacketField(order = 5)
+        float yaw;
+        @PacketField(order = 6)
+        float pitch;
+        @PacketField(order = 7)
+        boolean onGround;
+        @PacketField(order = 8, varint = true)
+        int sequence;
+
+        GeneratedPrimitivesPacket fill(Random random) {
+            id = random.nextInt();
+            timestamp = random.nextLong();
+            x = random.nextDouble();
+            y = random.nextDouble();
+            z = random.nextDouble();
+            yaw = random.nextFloat();
+            pitch = random.nextFloat();
+            onGround = random.nextBoolean();
+            sequence = random.nextInt(1 << 20);
+            return this;
+        }
+
+        @Override
+        public void processPacket(PacketListener handler) {
+        }
+    }
+
+    /**
+     * The same fields encoded by the reflective schema used for the packets compiled without the annotation processor.
+     */
+    public static class ReflectivePrimitivesPacket extends GeneratedPrimitivesPacket {
+        private static final PacketSchema<ReflectivePrimitivesPacket> SCHEMA = PacketSchemas.reflective(ReflectivePrimitivesPacket.class);
+
+        @Override
+        public void encode(PacketByteBuf buf) {
+            SCHEMA.encode(this, buf);
+        }
+
+        @Override
+        public void decode(PacketByteBuf buf) {
+            SCHEMA.decode(this, buf);
+        }
+    }
+
+    public static class StringsPacket implements Packet<PacketListener> {
+        private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZàèéìòù€✓";
+        private final String[] strings = new String[8];
+
+        public StringsPacket() {
+        }
+
+        StringsPacket(Random random) {
+            for (int i = 0; i < strings.length; i++) {
+                StringBuilder builder = new StringBuilder();
+                int length = 16 << (i % 4);
+                for (int j = 0; j < length; j++) {
+                    builder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                }
+                strings[i] = builder.toString();
+            }
+        }
+
+        @Override
+        public void encode(PacketByteBuf buf) {
+            for (String string : strings) {
+                buf.writeString(string);
+            }
+        }
+
+        @Override
+        public void decode(PacketByteBuf buf) {
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = buf.readString();
+            }
+        }
+
+        @Override
+        public void processPacket(PacketListener handler) {
+        }
+    }
+
+    public static class JsonPacket implements Packet<PacketListener> {
+        private Profile profile;
+
+        public JsonPacket() {
+        }
+
+        JsonPacket(Random random) {
+            profile = new Profile();
+            profile.name = "player" + random.nextInt(1000);
+            profile.level = random.nextInt(100);
+            profile.balance = random.nextDouble() * 10000;
+            profile.tags = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                profile.tags.add("tag" + random.nextInt(100));
+            }
+            profile.stats = new HashMap<>();
+            for (int i = 0; i < 8; i++) {
+                profile.stats.put("stat" + i, random.nextInt(1000));
+            }
+        }
+
+        @Override
+        public void encode(PacketByteBuf buf) {
+            buf.writeObject(profile, Profile.class);
+        }
+
+        @Override
+        public void decode(PacketByteBuf buf) {
+            profile = buf.readObject(Profile.class);
+        }
+
+        @Override
+        public void processPacket(PacketListener handler) {
+        }
+    }
+
+    public static class Profile {
+        private String name;
+        private int level;
+        private double balance;
+        private List<String> tags;
+        private Map<String, Integer> stats;
+    }
+
+    public static class BlobPacket implements Packet<PacketListener> {
+        private byte[] blob;
+
+        public BlobPacket() {
+        }
+
+        BlobPacket(byte[] blob) {
+            this.blob = blob;
+        }
+
+        @Override
+        public void encode(PacketByteBuf buf) {
+            buf.writeVarInt(blob.length);
+            buf.writeBytes(blob);
+        }
+
+        @Override
+        public void decode(PacketByteBuf buf) {
+            blob = new byte[buf.readVarInt()];
+            buf.readBytes(blob);
+        }
+
+        @Override
+        public void processPacket(PacketListener handler) {
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package it.multicoredev.mclib.benchmarks;
+
+import io.netty.channel.ChannelHandlerContext;
+import it.multicoredev.mclib.network.NetworkHandler;
+import it.multicoredev.mclib.network.NetworkSettings;
+import it.multicoredev.mclib.network.PacketByteBuf;
+import it.multicoredev.mclib.network.client.ClientSocket;
+import it.multicoredev.mclib.network.client.ServerAddress;
+import it.multicoredev.mclib.network.metrics.HistogramSnapshot;
+import it.multicoredev.mclib.network.metrics.LatencyHistogram;
+import it.multicoredev.mclib.network.protocol.Packet;
+import it.multicoredev.mclib.network.protocol.PacketListener;
+import it.multicoredev.mclib.network.protocol.PacketRegistry;
+import it.multicoredev.mclib.network.server.ServerSocket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib.
+ * MCLib is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EchoBenchmark {
+    private static final String HOST = "127.0.0.1";
+    private static final int PORT = 25590;
+    /**
+     * The number of packets in flight in {@link #pipelined()}.
+     */
+    private static final int WINDOW = 256;
+
+    private ServerSocket server;
+    private ClientSocket client;
+    private final Semaphore echoes = new Semaphore(0);
+    private volatile LatencyHistogram latencies = new LatencyHistogram();
+
+    @Setup
+    public void setup() throws Exception {
+        PacketRegistry registry = new PacketRegistry();
+        registry.registerPacket(EchoPacket.class, EchoPacket::new);
+
+        server = new ServerSocket(PORT, ServerListener.class, EchoNetworkHandler.class, new NetworkSettings().setPacketRegistry(registry));
+        server.start().get();
+
+        client = new ClientSocket(new ServerAddress(HOST, PORT), EchoNetworkHandler::new, new ClientListener(this), new NetworkSettings().setPacketRegistry(registry));
+        client.connectAsync().get();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        client.close().get();
+        server.stop().get();
+    }
+
+    /**
+     * Print the latency percentiles of the packets echoed by {@link #pipelined()} in the iteration.
+     */
+    @TearDown(Level.Iteration)
+    public void printLatencies() {
+        LatencyHistogram latencies = this.latencies;
+        this.latencies = new LatencyHistogram();
+
+        HistogramSnapshot snapshot = latencies.snapshot();
+        if (snapshot.getCount() > 0) System.out.println("pipelined latency (ns): " + snapshot);
+    }
+
+    /**
+     * A request answered by the server, one at a time. The sample mode reports the p99 of the round trip.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Packet<?> roundTrip() throws Exception {
+        return client.request(new EchoPacket(System.nanoTime())).get();
+    }
+
+    /**
+     * A window of packets flushed together and echoed by the server, the score is in packets per second.
+     * The latencies of the single packets are printed at the end of every iteration.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(WINDOW)
+    public void pipelined() throws Exception {
+        for (int i = 0; i < WINDOW; i++) {
+            client.sendPacket(new EchoPacket(System.nanoTime()), false);
+        }
+        client.flush();
+
+        echoes.acquire(WINDOW);
+    }
+
+    public interface EchoListener extends PacketListener {
+
+        void onEcho(EchoPacket packet);
+    }
+
+    public static class EchoPacket implements Packet<EchoListener> {
+        private long timestamp;
+
+        public EchoPacket() {
+        }
+
+        EchoPacket(long timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public void encode(PacketByteBuf buf) {
+            buf.writeLong(timestamp);
+        }
+
+        @Override
+        public void decode(PacketByteBuf buf) {
+            timestamp = buf.readLong();
+        }
+
+        @Override
+        public void processPacket(EchoListener handler) {
+            handler.onEcho(this);
+        }
+    }
+
+    /**
+     * Sends back the packets and answers the requests with the request itself.
+     */
+    public static class ServerListener implements EchoListener {
+        private NetworkHandler networkHandler;
+
+        @Override
+        public void setNetworkHandler(NetworkHandler networkHandler) {
+            this.networkHandler = networkHandler;
+            networkHandler.setRequestHandler(EchoPacket.class, CompletableFuture::completedFuture);
+        }
+
+        @Override
+        public void onEcho(EchoPacket packet) {
+            networkHandler.sendPacket(packet);
+        }
+    }
+
+    private static class ClientListener implements EchoListener {
+        private final EchoBenchmark benchmark;
+
+        private ClientListener(EchoBenchmark benchmark) {
+            this.benchmark = benchmark;
+        }
+
+        @Override
+        public void setNetworkHandler(NetworkHandler networkHandler) {
+        }
+
+        @Override
+        public void onEcho(EchoPacket packet) {
+            benchmark.latencies.record(System.nanoTime() - packet.timestamp);
+            benchmark.echoes.release();
+        }
+    }
+
+    public static class EchoNetworkHandler extends NetworkHandler {
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            cause.printStackTrace();
+            ctx.close();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package it.multicoredev.mclib.benchmarks;
+
+import it.multicoredev.mclib.network.PacketByteBuf;
+import it.multicoredev.mclib.network.protocol.Packet;
+import it.multicoredev.mclib.network.protocol.PacketListener;
+import it.multicoredev.mclib.network.protocol.PacketRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib.
+ * MCLib is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PacketFactoryBenchmark {
+    private Class<? extends Packet<?>> packetClass;
+    private Constructor<? extends Packet<?>> constructor;
+    private Supplier<? extends Packet<?>> generatedFactory;
+    private Supplier<? extends Packet<?>> explicitFactory;
+
+    @Setup
+    public void setup() throws Exception {
+        PacketRegistry registry = new PacketRegistry();
+        registry.registerPacket(GeneratedPacket.class);
+        registry.registerPacket(ExplicitPacket.class, ExplicitPacket::new);
+
+        Integer id = registry.getPacketId(GeneratedPacket.class);
+        packetClass = registry.getPacketClass(id);
+        constructor = packetClass.getConstructor();
+        generatedFactory = registry.getPacketFactory(id);
+        explicitFactory = registry.getPacketFactory(registry.getPacketId(ExplicitPacket.class));
+    }
+
+    @Benchmark
+    public Packet<?> reflectionLookup() throws Exception {
+        return packetClass.getConstructor().newInstance();
+    }
+
+    @Benchmark
+    public Packet<?> reflectionCached() throws Exception {
+        return constructor.newInstance();
+    }
+
+    @Benchmark
+    public Packet<?> generatedFactory() {
+        return generatedFactory.get();
+    }
+
+    @Benchmark
+    public Packet<?> explicitFactory() {
+        return explicitFactory.get();
+    }
+
+    public static class GeneratedPacket implements Packet<PacketListener> {
+        private int value;
+
+        @Override
+        public void encode(PacketByteBuf buf) {
+            buf.writeInt(value);
+        }
+
+        @Override
+        public void decode(PacketByteBuf buf) {
+            value = buf.readInt();
+        }
+
+        @Override
+        public void processPacket(PacketListener handler) {
+        }
+    }
+
+    public static class ExplicitPacket extends GeneratedPacket {
+    }
+}
@@ -0,0 +1,163 @@
+package it.multicoredev.mclib.benchmarks;
+
+import it.multicoredev.mclib.network.PacketByteBuf;
+import it.multicoredev.mclib.network.protocol.Packet;
+import it.multicoredev.mclib.network.protocol.PacketListener;
+import it.multicoredev.mclib.network.protocol.PacketRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib.
+ * MCLib is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RegistryBenchmark {
+    /**
+     * The lookups cycle over a shuffled sequence of this many packets, so they don't always hit the same entry.
+     */
+    private static final int LOOKUPS = 1024;
+
+    /**
+     * The number of packet classes in the registry.
+     */
+    @Param({"10", "100", "1000"})
+    public int types;
+
+    /**
+     * True to freeze the registry before the lookups.
+     */
+    @Param({"false", "true"})
+    public boolean frozen;
+
+    private PacketRegistry registry;
+    private final Class<?>[] classes = new Class<?>[LOOKUPS];
+    private final int[] ids = new int[LOOKUPS];
+    private int next;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        registry = new PacketRegistry();
+
+        byte[] bytecode = readBytecode(FillerPacket.class);
+        Class<? extends Packet<?>>[] registered = (Class<? extends Packet<?>>[]) new Class<?>[types];
+        for (int i = 0; i < types; i++) {
+            registered[i] = (Class<? extends Packet<?>>) new IsolatedClassLoader(bytecode).loadFiller();
+            // The copies share the class name, so they need explicit ids instead of the hash of the name
+            registry.registerPacket(registered[i], i);
+        }
+
+        if (frozen) registry.freeze();
+
+        Random random = new Random(42);
+        for (int i = 0; i < LOOKUPS; i++) {
+            classes[i] = registered[random.nextInt(types)];
+            ids[i] = registry.getPacketId((Class<? extends Packet>) classes[i]);
+        }
+    }
+
+    /**
+     * The lookup of the encoder: packet class to id.
+     */
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Integer idByClass() {
+        return registry.getPacketId((Class<? extends Packet>) classes[next()]);
+    }
+
+    /**
+     * The lookup of the decoder: packet id to factory.
+     */
+    @Benchmark
+    public Supplier<? extends Packet<?>> factoryById() {
+        return registry.getPacketFactory(ids[next()]);
+    }
+
+    private int next() {
+        return next = (next + 1) & (LOOKUPS - 1);
+    }
+
+    private static byte[] readBytecode(Class<?> clazz) throws IOException {
+        String resource = clazz.getName().replace('.', '/') + ".class";
+        try (InputStream in = clazz.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) throw new IOException("Cannot find the bytecode of " + clazz.getName());
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Defines its own copy of {@link FillerPacket}, so every loader gives a distinct packet class to register.
+     */
+    private static final class IsolatedClassLoader extends ClassLoader {
+        private final byte[] bytecode;
+
+        private IsolatedClassLoader(byte[] bytecode) {
+            super(RegistryBenchmark.class.getClassLoader());
+            this.bytecode = bytecode;
+        }
+
+        private Class<?> loadFiller() {
+            return defineClass(FillerPacket.class.getName(), bytecode, 0, bytecode.length);
+        }
+    }
+
+    public static class FillerPacket implements Packet<PacketListener> {
+
+        @Override
+        public void encode(PacketByteBuf buf) {
+        }
+
+        @Override
+        public void decode(PacketByteBuf buf) {
+        }
+
+        @Override
+        public void processPacket(PacketListener handler) {
+        }
+    }
+}
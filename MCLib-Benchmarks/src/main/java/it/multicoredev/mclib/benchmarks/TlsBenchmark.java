@@ -0,0 +1,186 @@
+package it.multicoredev.mclib.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+import io.netty.util.ReferenceCountUtil;
+import it.multicoredev.mclib.network.SslContexts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib.
+ * MCLib is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TlsBenchmark {
+    private static final String HOST = "localhost";
+    private static final int PORT = 25565;
+
+    /**
+     * The SSL engine, OPENSSL requires netty-tcnative on the classpath.
+     */
+    @Param({"JDK", "OPENSSL"})
+    public String provider;
+
+    /**
+     * True to resume the session of the previous handshake, False to run a full handshake every time.
+     */
+    @Param({"false", "true"})
+    public boolean resume;
+
+    @Param({"16384"})
+    public int payloadSize;
+
+    private SslContext serverContext;
+    private SslContext clientContext;
+    private EmbeddedChannel client;
+    private EmbeddedChannel server;
+    private ByteBuf payload;
+    private int nextPort = PORT;
+
+    @Setup
+    public void setup() throws Exception {
+        SslProvider sslProvider = SslProvider.valueOf(provider);
+        if (sslProvider == SslProvider.OPENSSL && !OpenSsl.isAvailable()) {
+            throw new IllegalStateException("OpenSSL is not available", OpenSsl.unavailabilityCause());
+        }
+
+        SelfSignedCertificate certificate = new SelfSignedCertificate(HOST);
+        serverContext = SslContextBuilder.forServer(certificate.certificate(), certificate.privateKey())
+                .sslProvider(sslProvider)
+                .sessionCacheSize(SslContexts.SESSION_CACHE_SIZE)
+                .sessionTimeout(SslContexts.SESSION_TIMEOUT)
+                .build();
+        clientContext = SslContextBuilder.forClient()
+                .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                .sslProvider(sslProvider)
+                .sessionCacheSize(SslContexts.SESSION_CACHE_SIZE)
+                .sessionTimeout(SslContexts.SESSION_TIMEOUT)
+                .build();
+        certificate.delete();
+
+        client = newClient(PORT);
+        server = newServer();
+        handshake(client, server);
+
+        payload = ByteBufAllocator.DEFAULT.directBuffer(payloadSize).writeZero(payloadSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.finishAndReleaseAll();
+        server.finishAndReleaseAll();
+        payload.release();
+    }
+
+    /**
+     * A complete TLS handshake between two in-memory channels, resumed from the session cache of the client when
+     * the same host and port are used.
+     */
+    @Benchmark
+    public boolean handshake() {
+        EmbeddedChannel client = newClient(resume ? PORT : nextPort++);
+        EmbeddedChannel server = newServer();
+        try {
+            return handshake(client, server);
+        } finally {
+            client.finishAndReleaseAll();
+            server.finishAndReleaseAll();
+        }
+    }
+
+    /**
+     * Encrypt a payload on the client and decrypt it on the server.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int bulk() {
+        client.writeOutbound(payload.retainedDuplicate());
+        pump(client, server);
+
+        int received = 0;
+        Object msg;
+        while ((msg = server.readInbound()) != null) {
+            received += ((ByteBuf) msg).readableBytes();
+            ReferenceCountUtil.release(msg);
+        }
+        return received;
+    }
+
+    private EmbeddedChannel newClient(int port) {
+        return new EmbeddedChannel(clientContext.newHandler(ByteBufAllocator.DEFAULT, HOST, port));
+    }
+
+    private EmbeddedChannel newServer() {
+        return new EmbeddedChannel(serverContext.newHandler(ByteBufAllocator.DEFAULT));
+    }
+
+    private static boolean handshake(EmbeddedChannel client, EmbeddedChannel server) {
+        pump(client, server);
+
+        SslHandler handler = client.pipeline().get(SslHandler.class);
+        if (!handler.handshakeFuture().isSuccess()) throw new IllegalStateException("Handshake failed", handler.handshakeFuture().cause());
+        return true;
+    }
+
+    /**
+     * Move the bytes written by each channel to the other until both are quiet.
+     */
+    private static void pump(EmbeddedChannel a, EmbeddedChannel b) {
+        boolean moved;
+        do {
+            moved = transfer(a, b) | transfer(b, a);
+        } while (moved);
+    }
+
+    private static boolean transfer(EmbeddedChannel from, EmbeddedChannel to) {
+        boolean moved = false;
+        Object msg;
+        while ((msg = from.readOutbound()) != null) {
+            to.writeInbound(msg);
+            moved = true;
+        }
+        return moved;
+    }
+}
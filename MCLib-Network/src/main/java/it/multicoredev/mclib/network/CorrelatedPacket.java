@@ -0,0 +1,91 @@
+package it.multicoredev.mclib.network;
+
+import it.multicoredev.mclib.network.protocol.Packet;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+final class CorrelatedPacket {
+    private final Packet<?> packet;
+    private final int flags;
+    private final int correlationId;
+    private final String error;
+
+    /**
+     * A packet sent or received as part of a request/response exchange.
+     *
+     * @param packet        The packet
+     * @param flags         {@link PacketFrame#FLAG_REQUEST} or {@link PacketFrame#FLAG_RESPONSE}
+     * @param correlationId The id of the request
+     */
+    CorrelatedPacket(Packet<?> packet, int flags, int correlationId) {
+        this(packet, flags, correlationId, null);
+    }
+
+    private CorrelatedPacket(Packet<?> packet, int flags, int correlationId, String error) {
+        this.packet = packet;
+        this.flags = flags;
+        this.correlationId = correlationId;
+        this.error = error;
+    }
+
+    static CorrelatedPacket request(Packet<?> packet, int correlationId) {
+        return new CorrelatedPacket(packet, PacketFrame.FLAG_REQUEST, correlationId);
+    }
+
+    static CorrelatedPacket response(Packet<?> packet, int correlationId) {
+        return new CorrelatedPacket(packet, PacketFrame.FLAG_RESPONSE, correlationId);
+    }
+
+    /**
+     * A response without a packet, telling the peer that its request could not be answered.
+     *
+     * @param correlationId The id of the request
+     * @param error         The reason of the failure
+     * @return The error response
+     */
+    static CorrelatedPacket error(int correlationId, String error) {
+        return new CorrelatedPacket(null, PacketFrame.FLAG_RESPONSE | PacketFrame.FLAG_ERROR, correlationId, error);
+    }
+
+    Packet<?> getPacket() {
+        return packet;
+    }
+
+    int getFlags() {
+        return flags;
+    }
+
+    int getCorrelationId() {
+        return correlationId;
+    }
+
+    boolean isResponse() {
+        return (flags & PacketFrame.FLAG_RESPONSE) != 0;
+    }
+
+    boolean isError() {
+        return (flags & PacketFrame.FLAG_ERROR) != 0;
+    }
+
+    String getError() {
+        return error;
+    }
+}
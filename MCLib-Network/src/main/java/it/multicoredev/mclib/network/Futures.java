@@ -0,0 +1,65 @@
+package it.multicoredev.mclib.network;
+
+import io.netty.util.concurrent.Future;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public final class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * Convert a Netty future in a {@link CompletableFuture} completed when the Netty future completes.
+     *
+     * @param future The Netty future
+     * @return The completable future
+     */
+    public static CompletableFuture<Void> toCompletable(Future<?> future) {
+        CompletableFuture<Void> completable = new CompletableFuture<>();
+        future.addListener(f -> {
+            if (f.isSuccess()) completable.complete(null);
+            else if (f.isCancelled()) completable.cancel(false);
+            else completable.completeExceptionally(f.cause());
+        });
+
+        return completable;
+    }
+
+    /**
+     * Get a {@link CompletableFuture} completed when all the Netty futures complete.
+     *
+     * @param futures The Netty futures
+     * @return The completable future
+     */
+    public static CompletableFuture<Void> allOf(Iterable<? extends Future<?>> futures) {
+        List<CompletableFuture<Void>> completables = new ArrayList<>();
+        for (Future<?> future : futures) {
+            completables.add(toCompletable(future));
+        }
+
+        return CompletableFuture.allOf(completables.toArray(new CompletableFuture[0]));
+    }
+}
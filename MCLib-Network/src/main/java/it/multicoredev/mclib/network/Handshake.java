@@ -0,0 +1,59 @@
+package it.multicoredev.mclib.network;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+final class Handshake {
+    private final int protocolVersion;
+    private final int minProtocolVersion;
+    private final long fingerprint;
+    private final int[] stableIds;
+
+    /**
+     * The handshake control frame, describing the packets and the protocol versions of a peer.
+     *
+     * @param protocolVersion    The protocol version of the peer
+     * @param minProtocolVersion The minimum protocol version accepted by the peer
+     * @param fingerprint        The fingerprint of the registry of the peer
+     * @param stableIds          The sorted stable ids of the packets of the peer, indexed by its packet ids
+     */
+    Handshake(int protocolVersion, int minProtocolVersion, long fingerprint, int[] stableIds) {
+        this.protocolVersion = protocolVersion;
+        this.minProtocolVersion = minProtocolVersion;
+        this.fingerprint = fingerprint;
+        this.stableIds = stableIds;
+    }
+
+    int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    int getMinProtocolVersion() {
+        return minProtocolVersion;
+    }
+
+    long getFingerprint() {
+        return fingerprint;
+    }
+
+    int[] getStableIds() {
+        return stableIds;
+    }
+}
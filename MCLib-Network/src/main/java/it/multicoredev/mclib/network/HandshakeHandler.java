@@ -0,0 +1,122 @@
+package it.multicoredev.mclib.network;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.ScheduledFuture;
+import it.multicoredev.mclib.network.exceptions.DecoderException;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class HandshakeHandler extends ChannelInboundHandlerAdapter {
+    private final PacketProtocol protocol;
+    private final long timeoutMillis;
+    private ScheduledFuture<?> timeout;
+    private ChannelPromise handshakeFuture;
+
+    /**
+     * Exchange the handshake with the peer when the connection is established.
+     * The handlers after this one see the connection as active only once the protocol has been negotiated,
+     * then this handler removes itself from the pipeline.
+     *
+     * @param protocol      The protocol of the connection
+     * @param timeoutMillis The time to wait for the handshake of the peer, 0 to wait forever
+     */
+    public HandshakeHandler(PacketProtocol protocol, long timeoutMillis) {
+        this.protocol = protocol;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Get the future of the handshake, completed when the protocol has been negotiated and the handlers after this one
+     * have seen the connection as active, or failed when the handshake fails or the connection is closed before it.
+     *
+     * @return The future of the handshake
+     */
+    public ChannelFuture handshakeFuture() {
+        return handshakeFuture;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        handshakeFuture = ctx.newPromise();
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) {
+        ctx.writeAndFlush(protocol.localHandshake()).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+
+        if (timeoutMillis > 0) {
+            timeout = ctx.executor().schedule(() -> fail(ctx, new DecoderException("Handshake timed out")), timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (!(msg instanceof Handshake)) {
+            ReferenceCountUtil.release(msg);
+            fail(ctx, new DecoderException("Packet received before the handshake"));
+            return;
+        }
+
+        if (timeout != null) timeout.cancel(false);
+
+        try {
+            protocol.negotiate((Handshake) msg);
+        } catch (DecoderException e) {
+            fail(ctx, e);
+            return;
+        }
+
+        ctx.fireChannelActive();
+        ctx.pipeline().remove(this);
+        handshakeFuture.trySuccess();
+    }
+
+    /**
+     * The handlers after this one have not seen the connection as active, so they are not notified of its end.
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        if (timeout != null) timeout.cancel(false);
+        handshakeFuture.tryFailure(new ClosedChannelException());
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        handshakeFuture.tryFailure(cause);
+        ctx.fireExceptionCaught(cause);
+    }
+
+    private void fail(ChannelHandlerContext ctx, Throwable cause) {
+        if (!ctx.channel().isOpen()) return;
+
+        handshakeFuture.tryFailure(cause);
+        ctx.fireExceptionCaught(cause);
+        ctx.close();
+    }
+}
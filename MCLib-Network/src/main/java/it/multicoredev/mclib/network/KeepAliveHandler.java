@@ -0,0 +1,93 @@
+package it.multicoredev.mclib.network;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.timeout.IdleStateEvent;
+import it.multicoredev.mclib.network.metrics.NetworkMetrics;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class KeepAliveHandler extends ChannelDuplexHandler {
+    private final NetworkMetrics metrics;
+    private volatile long roundTripTime = -1;
+
+    /**
+     * Answer the pings of the peer and, when an {@link io.netty.handler.timeout.IdleStateHandler} is in front of it,
+     * ping the peer when nothing has been written or read for a while and close the connection when nothing has been read
+     * even after the ping.
+     * The reader idle ping makes the peer answer even if it doesn't send pings of its own and this side is always writing.
+     *
+     * @param metrics The metrics recording the round trip times or null
+     */
+    public KeepAliveHandler(@Nullable NetworkMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Get the round trip time measured by the last ping.
+     *
+     * @return The round trip time in nanoseconds or -1 if no ping has been answered yet
+     */
+    public long getRoundTripTime() {
+        return roundTripTime;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof KeepAlive)) {
+            super.channelRead(ctx, msg);
+            return;
+        }
+
+        KeepAlive keepAlive = (KeepAlive) msg;
+        if (!keepAlive.isPong()) {
+            ctx.writeAndFlush(new KeepAlive(true, keepAlive.getTimestamp()), ctx.voidPromise());
+            return;
+        }
+
+        long rtt = System.nanoTime() - keepAlive.getTimestamp();
+        if (rtt < 0) return;
+
+        roundTripTime = rtt;
+        if (metrics != null) metrics.recordRoundTripTime(rtt);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (!(evt instanceof IdleStateEvent)) {
+            super.userEventTriggered(ctx, evt);
+            return;
+        }
+
+        switch (((IdleStateEvent) evt).state()) {
+            case WRITER_IDLE:
+                ctx.writeAndFlush(new KeepAlive(false, System.nanoTime()), ctx.voidPromise());
+                break;
+            case READER_IDLE:
+                if (((IdleStateEvent) evt).isFirst()) ctx.writeAndFlush(new KeepAlive(false, System.nanoTime()), ctx.voidPromise());
+                else ctx.close();
+                break;
+            default:
+                break;
+        }
+    }
+}
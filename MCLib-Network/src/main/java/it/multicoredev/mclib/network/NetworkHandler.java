@@ -1,12 +1,29 @@
 package it.multicoredev.mclib.network;
 
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundBuffer;
 import it.multicoredev.mclib.network.exceptions.PacketException;
 import it.multicoredev.mclib.network.exceptions.PacketSendException;
+import it.multicoredev.mclib.network.exceptions.ProcessException;
+import it.multicoredev.mclib.network.metrics.NetworkMetrics;
+import it.multicoredev.mclib.network.protocol.ConnectionState;
 import it.multicoredev.mclib.network.protocol.Packet;
 import it.multicoredev.mclib.network.protocol.PacketListener;
+import it.multicoredev.mclib.network.protocol.RecyclablePacket;
+import it.multicoredev.mclib.network.protocol.RequestHandler;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Copyright © 2020 by Lorenzo Magni
@@ -29,40 +46,394 @@ import org.jetbrains.annotations.NotNull;
  * THE POSSIBILITY OF SUCH DAMAGE.
  */
 public abstract class NetworkHandler extends ChannelInboundHandlerAdapter {
+    private static final AtomicLong NEXT_CONNECTION_ID = new AtomicLong();
+
+    private final long connectionId = NEXT_CONNECTION_ID.incrementAndGet();
     private PacketListener listener;
-    protected ChannelHandlerContext ctx;
+    protected volatile ChannelHandlerContext ctx;
+    private Executor dispatchExecutor;
+    private int maxPendingPackets;
+    private PacketDispatcher dispatcher;
+    private long maxPendingWriteBytes;
+    private long requestTimeoutMillis = 30000;
+    private final PendingRequests requests = new PendingRequests();
+    private final Map<Class<?>, RequestHandler<?>> requestHandlers = new ConcurrentHashMap<>();
+    private NetworkMetrics metrics;
 
     public void setPacketListener(@NotNull PacketListener listener) {
         if (this.listener != null) throw new IllegalStateException("PacketListener already set");
         this.listener = listener;
     }
 
+    void configure(NetworkSettings settings, NetworkMetrics metrics) {
+        this.metrics = metrics;
+        if (metrics != null) metrics.setQueueGauges(this::getPendingPackets, this::getPendingWriteBytes);
+        this.dispatchExecutor = settings.getDispatchExecutor();
+        this.maxPendingPackets = settings.getMaxPendingPackets();
+        this.maxPendingWriteBytes = settings.getMaxPendingWriteBytes();
+        this.requestTimeoutMillis = settings.getRequestTimeoutMillis();
+    }
+
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
         super.channelActive(ctx);
         this.ctx = ctx;
+        this.dispatcher = dispatchExecutor != null ? new PacketDispatcher(ctx, this, dispatchExecutor, maxPendingPackets) : null;
+
+        if (listener != null) listener.onConnectionStateChanged(ConnectionState.CONNECTED);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        super.channelInactive(ctx);
+        requests.failAll(new PacketSendException("Connection closed"));
+        if (listener != null) listener.onConnectionStateChanged(ConnectionState.DISCONNECTED);
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
         super.channelRead(ctx, msg);
 
-        Packet<PacketListener> packet = (Packet<PacketListener>) msg;
-        packet.processPacket(listener);
+        if (msg instanceof CorrelatedPacket && ((CorrelatedPacket) msg).isResponse()) {
+            CorrelatedPacket response = (CorrelatedPacket) msg;
+            if (response.isError()) requests.fail(response.getCorrelationId(), new ProcessException("Request failed on the peer: " + response.getError()));
+            else requests.complete(response.getCorrelationId(), response.getPacket());
+            return;
+        }
+
+        if (dispatcher != null) dispatcher.dispatch(msg);
+        else process(ctx, msg);
+    }
+
+    /**
+     * Process a received packet or request, on the event loop or on the dispatch executor.
+     *
+     * @param ctx The context of the connection the packet has been received from
+     * @param msg The packet or request
+     */
+    void process(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof CorrelatedPacket) {
+            processRequest(ctx, (CorrelatedPacket) msg);
+        } else {
+            processPacket((Packet<?>) msg);
+        }
+    }
+
+    /**
+     * Process a packet with the listener, then return it to its pool if it's a {@link RecyclablePacket}.
+     */
+    @SuppressWarnings("unchecked")
+    private void processPacket(Packet<?> packet) throws Exception {
+        try {
+            ((Packet<PacketListener>) packet).processPacket(listener);
+        } finally {
+            if (packet instanceof RecyclablePacket) ((RecyclablePacket<?>) packet).recycle();
+        }
+    }
+
+    /**
+     * Answer a request with its {@link RequestHandler}.
+     * If the handler fails or doesn't return a response the peer gets an error response, so its request fails
+     * immediately instead of waiting for the timeout.
+     * The response is written to the connection the request came from: if the client has reconnected in the meantime
+     * the response is dropped with the old connection, its correlation id means nothing to the new one.
+     */
+    @SuppressWarnings("unchecked")
+    private void processRequest(ChannelHandlerContext ctx, CorrelatedPacket request) throws Exception {
+        Packet<?> packet = request.getPacket();
+        RequestHandler<Packet<?>> handler = (RequestHandler<Packet<?>>) requestHandlers.get(packet.getClass());
+
+        if (handler == null) {
+            processPacket(packet);
+            return;
+        }
+
+        int correlationId = request.getCorrelationId();
+        CompletionStage<? extends Packet<?>> stage;
+        try {
+            stage = handler.handle(packet);
+        } catch (Exception e) {
+            answerError(ctx, correlationId, e);
+            throw e;
+        }
+
+        if (stage == null) {
+            answerError(ctx, correlationId, null);
+            return;
+        }
+
+        stage.whenComplete((response, t) -> {
+            if (t != null) {
+                answerError(ctx, correlationId, t);
+                ctx.pipeline().fireExceptionCaught(t);
+            } else if (response != null) {
+                ctx.writeAndFlush(CorrelatedPacket.response(response, correlationId), ctx.voidPromise());
+            } else {
+                answerError(ctx, correlationId, null);
+            }
+        });
+    }
+
+    private static void answerError(ChannelHandlerContext ctx, int correlationId, @Nullable Throwable cause) {
+        String error = cause == null ? "No response" : cause.getMessage() != null ? cause.getMessage() : cause.getClass().getName();
+        ctx.writeAndFlush(CorrelatedPacket.error(correlationId, error), ctx.voidPromise());
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        super.channelWritabilityChanged(ctx);
+        if (listener != null) listener.onWritabilityChanged(ctx.channel().isWritable());
     }
 
     @Override
     public abstract void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception;
 
     public void sendPacket(@NotNull Packet<?> packet) throws PacketSendException {
+        sendPacket(packet, true);
+    }
+
+    /**
+     * Send a packet optionally without flushing it.
+     * Packets written without flushing are kept in the outbound buffer until {@link #flush()} is called,
+     * so many packets can be sent with a single syscall.
+     *
+     * @param packet The packet to send
+     * @param flush  True to flush the packet immediately, False to only write it
+     * @throws PacketSendException If the packet cannot be written
+     */
+    public void sendPacket(@NotNull Packet<?> packet, boolean flush) throws PacketSendException {
+        sendPacketAsync(packet, flush);
+    }
+
+    /**
+     * Send a packet and get a future completed when the packet has been written to the socket.
+     *
+     * @param packet The packet to send
+     * @param flush  True to flush the packet immediately, False to only write it
+     * @return The future of the write
+     * @throws PacketSendException If the packet cannot be written, the outbound buffer is full or the connection is down
+     */
+    public ChannelFuture sendPacketAsync(@NotNull Packet<?> packet, boolean flush) throws PacketSendException {
+        return write(packet, flush);
+    }
+
+    /**
+     * Send a request and get a future completed with the response of the peer.
+     * The request times out after the default timeout set with {@link NetworkSettings#setRequestTimeout(long, TimeUnit)}.
+     *
+     * @param request The request packet
+     * @param <R>     The type of the response packet
+     * @return The future of the response
+     * @see #request(Packet, long, TimeUnit)
+     */
+    public <R extends Packet<?>> CompletableFuture<R> request(@NotNull Packet<?> request) {
+        return request(request, requestTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send a request and get a future completed with the response of the peer.
+     * Many requests can be in flight on the same connection, each one is matched with its response by a correlation id
+     * carried in the frame header. The peer answers with the {@link RequestHandler} registered for the class of the request.
+     * <p>
+     * The future is completed on the event loop thread, so the dependent actions must not block
+     * (or must be run with the async methods of {@link CompletableFuture}).
+     * It's completed exceptionally with a {@link java.util.concurrent.TimeoutException} if the response doesn't arrive in time
+     * with a {@link PacketSendException} if the request cannot be sent or the connection is closed
+     * and with a {@link ProcessException} if the handler of the peer failed or didn't return a response.
+     *
+     * @param request The request packet
+     * @param timeout The timeout of the request, 0 for no timeout
+     * @param unit    The unit of the timeout
+     * @param <R>     The type of the response packet
+     * @return The future of the response
+     */
+    @SuppressWarnings("unchecked")
+    public <R extends Packet<?>> CompletableFuture<R> request(@NotNull Packet<?> request, long timeout, TimeUnit unit) {
+        PendingRequests.Pending pending = requests.create(unit.toMillis(timeout));
+
+        try {
+            write(CorrelatedPacket.request(request, pending.id), true).addListener(future -> {
+                if (!future.isSuccess()) requests.fail(pending, new PacketSendException("Error while sending request", future.cause()));
+            });
+        } catch (PacketSendException e) {
+            requests.fail(pending, e);
+        }
+
+        return (CompletableFuture<R>) (CompletableFuture<?>) pending.future;
+    }
+
+    /**
+     * Set the handler answering the requests of the given class sent by the peer with {@link #request(Packet)}.
+     * Requests without a handler are processed as normal packets and never answered.
+     * Requests handled here are not recycled even if they are {@link RecyclablePacket}s, since the handler may answer them later.
+     *
+     * @param type    The class of the request packet
+     * @param handler The handler of the requests
+     * @param <Q>     The type of the request packet
+     */
+    public <Q extends Packet<?>> void setRequestHandler(@NotNull Class<Q> type, @NotNull RequestHandler<? super Q> handler) {
+        requestHandlers.put(type, handler);
+    }
+
+    /**
+     * Remove the handler of the requests of the given class.
+     *
+     * @param type The class of the request packet
+     */
+    public void removeRequestHandler(@NotNull Class<? extends Packet<?>> type) {
+        requestHandlers.remove(type);
+    }
+
+    /**
+     * Get the number of requests sent and waiting for a response.
+     *
+     * @return The number of pending requests
+     */
+    public int getPendingRequests() {
+        return requests.size();
+    }
+
+    private ChannelFuture write(Object msg, boolean flush) throws PacketSendException {
+        ChannelHandlerContext ctx = this.ctx;
+        if (ctx == null || !ctx.channel().isActive()) throw new PacketSendException("Not connected");
+
+        if (maxPendingWriteBytes > 0 && getPendingWriteBytes() > maxPendingWriteBytes) {
+            throw new PacketSendException("Outbound buffer full: more than " + maxPendingWriteBytes + " bytes waiting to be sent");
+        }
+
         try {
-            ctx.writeAndFlush(packet);
+            return flush ? ctx.writeAndFlush(msg) : ctx.write(msg);
         } catch (Exception e) {
             throw new PacketSendException("Error while sending packet", e);
         }
     }
 
+    /**
+     * Send and flush a packet only if the connection is writable.
+     * Use this for packets that can be dropped (e.g. frequent state updates) when the peer cannot keep up.
+     *
+     * @param packet The packet to send
+     * @return True if the packet has been sent, False if it has been dropped
+     * @throws PacketSendException If the packet cannot be written
+     */
+    public boolean trySendPacket(@NotNull Packet<?> packet) throws PacketSendException {
+        if (!isWritable()) return false;
+
+        sendPacketAsync(packet, true);
+        return true;
+    }
+
+    /**
+     * Return true if the connection is writable.
+     * The connection is not writable when the bytes waiting to be sent exceed the high water mark.
+     *
+     * @return True if the connection is writable, False otherwise
+     */
+    public boolean isWritable() {
+        return ctx != null && ctx.channel().isWritable();
+    }
+
+    /**
+     * Get the number of bytes waiting to be written to the socket.
+     *
+     * @return The number of pending bytes
+     */
+    public long getPendingWriteBytes() {
+        if (ctx == null) return 0;
+
+        ChannelOutboundBuffer buffer = ctx.channel().unsafe().outboundBuffer();
+        return buffer != null ? buffer.totalPendingWriteBytes() : 0;
+    }
+
+    /**
+     * Flush all the packets written with {@link #sendPacket(Packet, boolean)}.
+     *
+     * @throws PacketSendException If the channel cannot be flushed
+     */
+    public void flush() throws PacketSendException {
+        ChannelHandlerContext ctx = this.ctx;
+        if (ctx == null) return;
+
+        try {
+            ctx.flush();
+        } catch (Exception e) {
+            throw new PacketSendException("Error while flushing packets", e);
+        }
+    }
+
+    /**
+     * Get the number of received packets waiting to be processed by the dispatch executor.
+     *
+     * @return The number of pending packets, always 0 when the packets are processed on the event loop
+     */
+    public int getPendingPackets() {
+        return dispatcher != null ? dispatcher.getPending() : 0;
+    }
+
+    /**
+     * Get the metrics of the connection.
+     *
+     * @return The metrics or null if the metrics are disabled in the {@link NetworkSettings}
+     */
+    @Nullable
+    public NetworkMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the round trip time measured by the last keepalive ping of the connection.
+     *
+     * @return The round trip time in nanoseconds or -1 if no ping has been answered yet
+     * @see NetworkSettings#setKeepAlive(long, long, java.util.concurrent.TimeUnit)
+     */
+    public long getRoundTripTime() {
+        ChannelHandlerContext ctx = this.ctx;
+        if (ctx == null) return -1;
+
+        KeepAliveHandler keepAlive = ctx.pipeline().get(KeepAliveHandler.class);
+        return keepAlive != null ? keepAlive.getRoundTripTime() : -1;
+    }
+
+    /**
+     * Get the protocol negotiated with the peer.
+     *
+     * @return The protocol or null if the connection has not been established yet
+     */
+    @Nullable
+    public PacketProtocol getProtocol() {
+        ChannelHandlerContext ctx = this.ctx;
+        return ctx != null ? ctx.channel().attr(PacketProtocol.KEY).get() : null;
+    }
+
+    /**
+     * Get the protocol version agreed with the peer during the handshake.
+     *
+     * @return The protocol version or -1 if the connection has not been established yet
+     */
+    public int getProtocolVersion() {
+        PacketProtocol protocol = getProtocol();
+        return protocol != null ? protocol.getProtocolVersion() : -1;
+    }
+
+    /**
+     * Get the id of the connection handled by this NetworkHandler, unique in the JVM.
+     *
+     * @return The id of the connection
+     */
+    public long getConnectionId() {
+        return connectionId;
+    }
+
+    /**
+     * Get the channel of the connection.
+     *
+     * @return The channel or null if the connection has not been established yet
+     */
+    @Nullable
+    public Channel getChannel() {
+        return ctx != null ? ctx.channel() : null;
+    }
+
     public boolean isConnected() {
         return ctx != null && ctx.channel().isActive();
     }
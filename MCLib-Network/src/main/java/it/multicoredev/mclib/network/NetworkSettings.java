@@ -0,0 +1,542 @@
+package it.multicoredev.mclib.network;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.handler.ssl.SslContext;
+import it.multicoredev.mclib.network.metrics.NetworkMetrics;
+import it.multicoredev.mclib.network.protocol.PacketRegistry;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class NetworkSettings {
+    private int maxFrameLength = 8 * 1024 * 1024;
+    private int flushConsolidation = 0;
+    private Transport transport;
+    private int bossThreads = 1;
+    private int workerThreads = 0;
+    private boolean reusePort = false;
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private int compressionThreshold = -1;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private Executor dispatchExecutor;
+    private int maxPendingPackets = 1024;
+    private WriteBufferWaterMark writeBufferWaterMark = WriteBufferWaterMark.DEFAULT;
+    private long maxPendingWriteBytes = 0;
+    private long requestTimeoutMillis = 30000;
+    private NetworkMetrics metrics;
+    private ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+    private SslContext sslContext;
+    private long sslHandshakeTimeoutMillis = 10000;
+    private boolean hostnameVerification = true;
+    private boolean autoReconnect = false;
+    private long reconnectInitialDelayMillis = 500;
+    private long reconnectMaxDelayMillis = 30000;
+    private int replayBufferSize = 0;
+    private long pingIntervalMillis = 0;
+    private long idleTimeoutMillis = 0;
+    private long handshakeTimeoutMillis = 10000;
+    private PacketRegistry packetRegistry = PacketRegistry.getInstance();
+
+    public NetworkSettings() {
+    }
+
+    /**
+     * Get the maximum length in bytes of a single frame (packet id and body).
+     * Bigger frames are rejected and the connection is closed.
+     *
+     * @return The maximum frame length in bytes
+     */
+    public int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+
+    public NetworkSettings setMaxFrameLength(int maxFrameLength) {
+        if (maxFrameLength <= 0) throw new IllegalArgumentException("maxFrameLength must be positive");
+        this.maxFrameLength = maxFrameLength;
+        return this;
+    }
+
+    /**
+     * Get the number of flushes after which a flush is forwarded to the socket when flush consolidation is enabled.
+     *
+     * @return The number of consolidated flushes or 0 if flush consolidation is disabled
+     */
+    public int getFlushConsolidation() {
+        return flushConsolidation;
+    }
+
+    /**
+     * Enable the consolidation of the flushes with a FlushConsolidationHandler.
+     * When enabled, consecutive flushes (e.g. many {@link NetworkHandler#sendPacket} calls in the same tick) are merged
+     * and forwarded to the socket once every explicitFlushAfterFlushes flushes or when the event loop is free.
+     *
+     * @param explicitFlushAfterFlushes The number of consolidated flushes, 0 to disable
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setFlushConsolidation(int explicitFlushAfterFlushes) {
+        if (explicitFlushAfterFlushes < 0) throw new IllegalArgumentException("explicitFlushAfterFlushes cannot be negative");
+        this.flushConsolidation = explicitFlushAfterFlushes;
+        return this;
+    }
+
+    /**
+     * Get the transport used by the sockets.
+     * If not set the best transport available is used (see {@link Transport#best()}).
+     *
+     * @return The transport
+     */
+    public Transport getTransport() {
+        return transport != null ? transport : Transport.best();
+    }
+
+    public NetworkSettings setTransport(Transport transport) {
+        if (transport != null && !transport.isAvailable()) throw new IllegalArgumentException("Transport " + transport + " is not available");
+        this.transport = transport;
+        return this;
+    }
+
+    public int getBossThreads() {
+        return bossThreads;
+    }
+
+    /**
+     * Set the number of threads accepting the connections of a server.
+     * When {@link #isReusePort()} is enabled the server binds a socket for each boss thread.
+     *
+     * @param bossThreads The number of threads of the boss event loop group
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setBossThreads(int bossThreads) {
+        if (bossThreads <= 0) throw new IllegalArgumentException("bossThreads must be positive");
+        this.bossThreads = bossThreads;
+        return this;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * Set the number of threads handling the I/O of the connections.
+     *
+     * @param workerThreads The number of threads of the worker event loop group, 0 to use the Netty default (2 * cores)
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setWorkerThreads(int workerThreads) {
+        if (workerThreads < 0) throw new IllegalArgumentException("workerThreads cannot be negative");
+        this.workerThreads = workerThreads;
+        return this;
+    }
+
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    /**
+     * Enable SO_REUSEPORT on the server sockets.
+     * Supported only by the epoll transport, the server binds a socket for each boss thread so the kernel
+     * spreads the incoming connections across them.
+     *
+     * @param reusePort True to enable SO_REUSEPORT
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setReusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+        return this;
+    }
+
+    @Nullable
+    public EventLoopGroup getBossGroup() {
+        return bossGroup;
+    }
+
+    @Nullable
+    public EventLoopGroup getWorkerGroup() {
+        return workerGroup;
+    }
+
+    /**
+     * Use existing event loop groups instead of creating new ones for each socket.
+     * Shared groups must be created with {@link Transport#newEventLoopGroup(int)} of the transport of these settings
+     * and are never shut down by the sockets.
+     *
+     * @param bossGroup   The group accepting the connections of the servers, null to create one per server
+     * @param workerGroup The group handling the I/O of the connections, null to create one per socket
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setEventLoopGroups(@Nullable EventLoopGroup bossGroup, @Nullable EventLoopGroup workerGroup) {
+        this.bossGroup = bossGroup;
+        this.workerGroup = workerGroup;
+        return this;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Set the minimum size of a packet to be compressed with zlib.
+     * Smaller packets are sent uncompressed. Compressed packets are always accepted from the peer,
+     * this only enables the compression of the outbound packets.
+     *
+     * @param compressionThreshold The minimum size in bytes of the compressed packets, -1 to disable the compression
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold < 0 ? -1 : compressionThreshold;
+        return this;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Set the zlib compression level.
+     *
+     * @param compressionLevel The compression level, from 0 to 9 or -1 for the default level
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < -1 || compressionLevel > 9) throw new IllegalArgumentException("compressionLevel must be between -1 and 9");
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    @Nullable
+    public Executor getDispatchExecutor() {
+        return dispatchExecutor;
+    }
+
+    /**
+     * Set the executor processing the received packets.
+     * If null the packets are processed directly on the event loop thread that read them, so a slow
+     * {@link it.multicoredev.mclib.network.protocol.PacketListener} delays every connection of that event loop.
+     * The packets of a connection are always processed one at a time and in the order they were received.
+     * See {@link PacketExecutors} for worker pools and virtual threads. The executor is never shut down by the sockets.
+     *
+     * @param dispatchExecutor The executor or null to process the packets on the event loop
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setDispatchExecutor(@Nullable Executor dispatchExecutor) {
+        this.dispatchExecutor = dispatchExecutor;
+        return this;
+    }
+
+    public int getMaxPendingPackets() {
+        return maxPendingPackets;
+    }
+
+    /**
+     * Set the soft limit of received packets of a connection waiting for the dispatch executor.
+     * When the limit is reached the connection stops reading until half of the packets have been processed.
+     * The packets already decoded from the last read are still queued, so the limit can be exceeded by the packets
+     * of a single read.
+     *
+     * @param maxPendingPackets The number of pending packets that pauses the reading
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setMaxPendingPackets(int maxPendingPackets) {
+        if (maxPendingPackets <= 1) throw new IllegalArgumentException("maxPendingPackets must be greater than 1");
+        this.maxPendingPackets = maxPendingPackets;
+        return this;
+    }
+
+    public WriteBufferWaterMark getWriteBufferWaterMark() {
+        return writeBufferWaterMark;
+    }
+
+    /**
+     * Set the write buffer water marks of the connections.
+     * A connection becomes unwritable when the bytes waiting to be sent exceed the high water mark and
+     * writable again when they drop below the low water mark.
+     *
+     * @param low  The low water mark in bytes
+     * @param high The high water mark in bytes
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setWriteBufferWaterMark(int low, int high) {
+        this.writeBufferWaterMark = new WriteBufferWaterMark(low, high);
+        return this;
+    }
+
+    public long getMaxPendingWriteBytes() {
+        return maxPendingWriteBytes;
+    }
+
+    /**
+     * Set the maximum number of bytes waiting to be sent to a peer.
+     * When the limit is exceeded {@link NetworkHandler#sendPacket(it.multicoredev.mclib.network.protocol.Packet)}
+     * throws a {@link it.multicoredev.mclib.network.exceptions.PacketSendException} instead of buffering more data.
+     *
+     * @param maxPendingWriteBytes The maximum number of pending bytes, 0 for no limit
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setMaxPendingWriteBytes(long maxPendingWriteBytes) {
+        if (maxPendingWriteBytes < 0) throw new IllegalArgumentException("maxPendingWriteBytes cannot be negative");
+        this.maxPendingWriteBytes = maxPendingWriteBytes;
+        return this;
+    }
+
+    public long getRequestTimeoutMillis() {
+        return requestTimeoutMillis;
+    }
+
+    /**
+     * Set the default timeout of the requests sent with {@link NetworkHandler#request(it.multicoredev.mclib.network.protocol.Packet)}.
+     * A request not answered in time is completed with a {@link java.util.concurrent.TimeoutException}.
+     *
+     * @param timeout The timeout, 0 for no timeout
+     * @param unit    The unit of the timeout
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setRequestTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) throw new IllegalArgumentException("timeout cannot be negative");
+        this.requestTimeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    @Nullable
+    public NetworkMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Set the metrics recording the traffic of the connections.
+     * When set, a {@link MetricsHandler} is added to every pipeline and the encoders and decoders record
+     * the packets by id with their encode and decode times.
+     *
+     * @param metrics The global metrics or null to disable the metrics
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setMetrics(@Nullable NetworkMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public ByteBufAllocator getAllocator() {
+        return allocator;
+    }
+
+    /**
+     * Set the allocator of the buffers of the connections.
+     * All the frames, the compressed payloads and the broadcast frames are allocated with it and released
+     * as soon as they are written or decoded.
+     *
+     * @param allocator The allocator, {@link PooledByteBufAllocator#DEFAULT} by default
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setAllocator(ByteBufAllocator allocator) {
+        if (allocator == null) throw new IllegalArgumentException("allocator cannot be null");
+        this.allocator = allocator;
+        return this;
+    }
+
+    public PacketRegistry getPacketRegistry() {
+        return packetRegistry;
+    }
+
+    /**
+     * Set the registry of the packets sent and received by the connections.
+     * Sockets with different registries have independent packet ids, e.g. a proxy can speak a protocol with its
+     * clients and another one with its backend servers.
+     *
+     * @param packetRegistry The registry, {@link PacketRegistry#getInstance()} by default
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setPacketRegistry(PacketRegistry packetRegistry) {
+        if (packetRegistry == null) throw new IllegalArgumentException("packetRegistry cannot be null");
+        this.packetRegistry = packetRegistry;
+        return this;
+    }
+
+    @Nullable
+    public SslContext getSslContext() {
+        return sslContext;
+    }
+
+    /**
+     * Enable TLS on the connections.
+     * Use a server context for {@link it.multicoredev.mclib.network.server.ServerSocket} and a client context for
+     * {@link it.multicoredev.mclib.network.client.ClientSocket}, see {@link SslContexts}.
+     * The client verifies that the certificate of the server matches the host it connects to, unless disabled with
+     * {@link #setHostnameVerification(boolean)}.
+     *
+     * @param sslContext The SSL context or null to disable TLS
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setSslContext(@Nullable SslContext sslContext) {
+        this.sslContext = sslContext;
+        return this;
+    }
+
+    public long getSslHandshakeTimeoutMillis() {
+        return sslHandshakeTimeoutMillis;
+    }
+
+    /**
+     * Set the time after which a connection that has not completed the TLS handshake is closed.
+     *
+     * @param timeout The timeout, 0 for no timeout
+     * @param unit    The unit of the timeout
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setSslHandshakeTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) throw new IllegalArgumentException("timeout cannot be negative");
+        this.sslHandshakeTimeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    public boolean isHostnameVerification() {
+        return hostnameVerification;
+    }
+
+    /**
+     * Set if the client verifies that the certificate of the server matches the host it connects to.
+     * The certificate is still validated against the trusted certificates of the SSL context: disable the verification
+     * only to connect by IP to a server whose certificate is trusted explicitly, e.g. a self-signed certificate on loopback.
+     *
+     * @param hostnameVerification True to verify the host name, False otherwise
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setHostnameVerification(boolean hostnameVerification) {
+        this.hostnameVerification = hostnameVerification;
+        return this;
+    }
+
+    public boolean isAutoReconnect() {
+        return autoReconnect;
+    }
+
+    /**
+     * Set if the client connects again when the connection is lost or the connection attempt fails.
+     * The client waits a random delay that grows exponentially with the failed attempts
+     * (see {@link #setReconnectDelay(long, long, TimeUnit)}) and stops only when it's closed.
+     *
+     * @param autoReconnect True to reconnect automatically, False otherwise
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setAutoReconnect(boolean autoReconnect) {
+        this.autoReconnect = autoReconnect;
+        return this;
+    }
+
+    public long getReconnectInitialDelayMillis() {
+        return reconnectInitialDelayMillis;
+    }
+
+    public long getReconnectMaxDelayMillis() {
+        return reconnectMaxDelayMillis;
+    }
+
+    /**
+     * Set the delay between the reconnection attempts.
+     * The delay is doubled after every failed attempt up to the maximum and a random jitter of up to half the delay is
+     * subtracted, so many clients that lost the same server don't reconnect all at the same time.
+     *
+     * @param initialDelay The delay before the first attempt
+     * @param maxDelay     The maximum delay between two attempts
+     * @param unit         The unit of the delays
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setReconnectDelay(long initialDelay, long maxDelay, TimeUnit unit) {
+        if (initialDelay <= 0) throw new IllegalArgumentException("initialDelay must be positive");
+        if (maxDelay < initialDelay) throw new IllegalArgumentException("maxDelay cannot be less than initialDelay");
+        this.reconnectInitialDelayMillis = unit.toMillis(initialDelay);
+        this.reconnectMaxDelayMillis = unit.toMillis(maxDelay);
+        return this;
+    }
+
+    public int getReplayBufferSize() {
+        return replayBufferSize;
+    }
+
+    /**
+     * Set the number of packets kept by a client while the connection is down.
+     * The packets sent with the {@link it.multicoredev.mclib.network.client.ClientSocket} while disconnected are buffered
+     * and sent in order as soon as the connection is established again. When the buffer is full
+     * {@link it.multicoredev.mclib.network.client.ClientSocket#sendPacket(it.multicoredev.mclib.network.protocol.Packet)}
+     * throws a {@link it.multicoredev.mclib.network.exceptions.PacketSendException}.
+     * Servers don't buffer: a connection that has been closed is gone, the client opens a new one.
+     *
+     * @param replayBufferSize The maximum number of buffered packets, 0 to disable the buffer
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setReplayBufferSize(int replayBufferSize) {
+        if (replayBufferSize < 0) throw new IllegalArgumentException("replayBufferSize cannot be negative");
+        this.replayBufferSize = replayBufferSize;
+        return this;
+    }
+
+    public long getPingIntervalMillis() {
+        return pingIntervalMillis;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * Enable the keepalive of the connections.
+     * A ping is sent when nothing has been written for the ping interval, its pong measures the round trip time of the
+     * connection. A ping is also sent when nothing has been read for half of the idle timeout, so the peer answers even
+     * if it doesn't ping on its own. A connection where nothing has been read for the idle timeout is considered dead and closed.
+     *
+     * @param pingInterval The write idle time after which a ping is sent, 0 to only ping when nothing is read
+     * @param idleTimeout  The read idle time after which the connection is closed, 0 to never close idle connections
+     * @param unit         The unit of the times
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setKeepAlive(long pingInterval, long idleTimeout, TimeUnit unit) {
+        if (pingInterval < 0) throw new IllegalArgumentException("pingInterval cannot be negative");
+        if (idleTimeout < 0) throw new IllegalArgumentException("idleTimeout cannot be negative");
+        if (idleTimeout > 0 && pingInterval >= idleTimeout) throw new IllegalArgumentException("pingInterval must be less than idleTimeout");
+        this.pingIntervalMillis = unit.toMillis(pingInterval);
+        this.idleTimeoutMillis = unit.toMillis(idleTimeout);
+        return this;
+    }
+
+    public long getHandshakeTimeoutMillis() {
+        return handshakeTimeoutMillis;
+    }
+
+    /**
+     * Set the time to wait for the handshake of the peer, in which the peers agree on the protocol version and on the
+     * packets they can exchange. The connection is closed if the handshake is not received in time.
+     *
+     * @param timeout The timeout of the handshake, 0 to wait forever
+     * @param unit    The unit of the timeout
+     * @return The NetworkSettings
+     */
+    public NetworkSettings setHandshakeTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) throw new IllegalArgumentException("timeout cannot be negative");
+        this.handshakeTimeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+}
@@ -4,12 +4,18 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.util.ByteProcessor;
+import io.netty.util.ReferenceCounted;
+import it.multicoredev.mclib.network.codec.PacketCodec;
+import it.multicoredev.mclib.network.codec.PacketCodecs;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
@@ -38,7 +44,9 @@ import java.nio.charset.StandardCharsets;
  * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
  * THE POSSIBILITY OF SUCH DAMAGE.
  */
-public class PacketByteBuf {
+public class PacketByteBuf implements ReferenceCounted {
+    private static final byte OBJECT_JSON = 0;
+    private static final byte OBJECT_BINARY = 1;
     private static Gson gson = new GsonBuilder().disableHtmlEscaping().create();
     private ByteBuf buf;
 
@@ -54,37 +62,271 @@ public class PacketByteBuf {
         return buf;
     }
 
+    /**
+     * Read a string prefixed by its length in bytes as a VarInt.
+     *
+     * @param charset The charset of the string
+     * @return The string
+     * @throws IndexOutOfBoundsException If the length of the string is not valid
+     */
     public String readString(Charset charset) {
-        int len = readInt();
-        ByteBuf buf = buf().readBytes(len);
-        return buf.toString(charset);
+        int len = readVarInt();
+        if (len < 0 || len > buf.readableBytes()) {
+            throw new IndexOutOfBoundsException("String length " + len + " exceeds readable bytes " + buf.readableBytes());
+        }
+
+        String str = buf.toString(buf.readerIndex(), len, charset);
+        buf.skipBytes(len);
+        return str;
     }
 
     public String readString() {
         return readString(StandardCharsets.UTF_8);
     }
 
-    public PacketByteBuf writeString(String str) {
-        byte[] bytes = str.getBytes();
-        writeInt(bytes.length);
+    /**
+     * Write a string prefixed by its length in bytes as a VarInt.
+     *
+     * @param str     The string
+     * @param charset The charset of the string
+     * @return The PacketByteBuf
+     */
+    public PacketByteBuf writeString(String str, Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8)) return writeString(str);
+
+        byte[] bytes = str.getBytes(charset);
+        writeVarInt(bytes.length);
         writeBytes(bytes);
         return this;
     }
 
     /**
-     * Write an Object serialized as json.
-     * The object must be serializable with Gson.
+     * Write a string encoded as UTF-8 prefixed by its length in bytes as a VarInt.
+     * The string is encoded directly into the buffer without intermediate byte arrays.
+     *
+     * @param str The string
+     * @return The PacketByteBuf
+     */
+    public PacketByteBuf writeString(String str) {
+        writeVarInt(ByteBufUtil.utf8Bytes(str));
+        ByteBufUtil.writeUtf8(buf, str);
+        return this;
+    }
+
+    /**
+     * Get the number of bytes needed to write a value as a VarInt.
+     *
+     * @param value The value
+     * @return The size of the VarInt, from 1 to 5 bytes
+     */
+    public static int varIntSize(int value) {
+        if ((value & 0xFFFFFF80) == 0) return 1;
+        if ((value & 0xFFFFC000) == 0) return 2;
+        if ((value & 0xFFE00000) == 0) return 3;
+        if ((value & 0xF0000000) == 0) return 4;
+        return 5;
+    }
+
+    /**
+     * Read an int written as a VarInt.
+     *
+     * @return The value
+     * @throws IllegalArgumentException If the VarInt is longer than 5 bytes
+     */
+    public int readVarInt() {
+        int value = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            if (shift >= 35) throw new IllegalArgumentException("VarInt too big");
+            b = buf.readByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return value;
+    }
+
+    /**
+     * Write an int as a VarInt: 7 bits for each byte, the most significant bit marks if another byte follows.
+     * Values from 0 to 127 are written with a single byte, negative values always take 5 bytes
+     * (use {@link #writeSignedVarInt(int)} for values that can be negative).
+     *
+     * @param value The value
+     * @return The PacketByteBuf
+     */
+    public PacketByteBuf writeVarInt(int value) {
+        while ((value & 0xFFFFFF80) != 0) {
+            buf.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        buf.writeByte(value);
+        return this;
+    }
+
+    /**
+     * Read a long written as a VarLong.
+     *
+     * @return The value
+     * @throws IllegalArgumentException If the VarLong is longer than 10 bytes
+     */
+    public long readVarLong() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            if (shift >= 70) throw new IllegalArgumentException("VarLong too big");
+            b = buf.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return value;
+    }
+
+    /**
+     * Write a long as a VarLong, see {@link #writeVarInt(int)}.
+     *
+     * @param value The value
+     * @return The PacketByteBuf
+     */
+    public PacketByteBuf writeVarLong(long value) {
+        while ((value & 0xFFFFFFFFFFFFFF80L) != 0) {
+            buf.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        buf.writeByte((int) value);
+        return this;
+    }
+
+    /**
+     * Read an int written with {@link #writeSignedVarInt(int)}.
+     *
+     * @return The value
+     */
+    public int readSignedVarInt() {
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Write an int as a ZigZag encoded VarInt, so small negative values take few bytes too.
+     *
+     * @param value The value
+     * @return The PacketByteBuf
+     */
+    public PacketByteBuf writeSignedVarInt(int value) {
+        return writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Read a long written with {@link #writeSignedVarLong(long)}.
+     *
+     * @return The value
+     */
+    public long readSignedVarLong() {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Write a long as a ZigZag encoded VarLong, so small negative values take few bytes too.
+     *
+     * @param value The value
+     * @return The PacketByteBuf
+     */
+    public PacketByteBuf writeSignedVarLong(long value) {
+        return writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Write an Object serialized as json with its runtime class.
+     * The object must be serializable with Gson. Use {@link #writeObject(Object, Type)} to write it in binary
+     * with its {@link PacketCodec}.
      *
      * @param obj The object to send.
      * @return The PacketByteBuf.
      * @throws IllegalArgumentException If the object is not serializable.
      */
     public PacketByteBuf writeObject(Object obj) throws IllegalArgumentException {
+        writeByte(OBJECT_JSON);
+        return writeJson(obj, obj != null ? obj.getClass() : Object.class);
+    }
+
+    /**
+     * Write an Object read back with {@link #readObject(Type)} and the same type.
+     * If a {@link PacketCodec} is registered in {@link PacketCodecs} for the declared type and the object is exactly of
+     * that class the object is written in binary directly into the buffer. Otherwise, including subclasses of the declared
+     * type, it's serialized as json as the declared type and must be serializable with Gson, so the codec chosen by
+     * the reader is always the one used by the writer.
+     *
+     * @param obj  The object to send.
+     * @param type The declared type of the object, the same passed to {@link #readObject(Type)}.
+     * @return The PacketByteBuf.
+     * @throws IllegalArgumentException If the object is not serializable.
+     */
+    @SuppressWarnings("unchecked")
+    public PacketByteBuf writeObject(Object obj, Type type) throws IllegalArgumentException {
+        Class<?> rawType = rawType(type);
+        PacketCodec<Object> codec = obj != null && obj.getClass() == rawType ? (PacketCodec<Object>) PacketCodecs.get(rawType) : null;
+        if (codec == null) {
+            writeByte(OBJECT_JSON);
+            return writeJson(obj, type);
+        }
+
+        writeByte(OBJECT_BINARY);
+        codec.encode(this, obj);
+        return this;
+    }
+
+    /**
+     * Read an object written with {@link #writeObject(Object, Type)} or {@link #writeObject(Object)}.
+     * Objects written in binary are decoded with the {@link PacketCodec} registered for the type, json objects with Gson.
+     *
+     * @param type The declared type of the object.
+     * @param <T>  The type of the object.
+     * @return The object deserialized.
+     * @throws IllegalArgumentException If the object is not deserializable.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T readObject(Type type) throws IllegalArgumentException {
+        byte format = readByte();
+        if (format == OBJECT_JSON) return readJson(type);
+        if (format != OBJECT_BINARY) throw new IllegalArgumentException("Unknown object format " + format);
+
+        Class<?> rawType = rawType(type);
+        PacketCodec<?> codec = rawType != null ? PacketCodecs.get(rawType) : null;
+        if (codec == null) throw new IllegalArgumentException("Object " + type.getTypeName() + " has no registered codec");
+
+        return (T) codec.decode(this);
+    }
+
+    @Nullable
+    private static Class<?> rawType(Type type) {
+        if (type instanceof Class) return (Class<?>) type;
+        if (type instanceof ParameterizedType) return (Class<?>) ((ParameterizedType) type).getRawType();
+        return null;
+    }
+
+    /**
+     * Write an Object serialized as json.
+     * The object must be serializable with Gson.
+     *
+     * @param obj  The object to send.
+     * @param type The type of the object.
+     * @return The PacketByteBuf.
+     * @throws IllegalArgumentException If the object is not serializable.
+     */
+    public PacketByteBuf writeJson(Object obj, Type type) throws IllegalArgumentException {
         try {
-            String json = gson.toJson(obj);
+            String json = gson.toJson(obj, type);
             writeString(json);
         } catch (Exception e) {
-            throw new IllegalArgumentException("Object " + obj.getClass().getCanonicalName() + " is not serializable", e);
+            throw new IllegalArgumentException("Object " + type.getTypeName() + " is not serializable", e);
         }
 
         return this;
@@ -96,8 +338,9 @@ public class PacketByteBuf {
      * @param type The type of the object.
      * @param <T>  The type of the object.
      * @return The object deserialized.
+     * @throws IllegalArgumentException If the object is not deserializable.
      */
-    public <T> T readObject(Type type) throws IllegalArgumentException {
+    public <T> T readJson(Type type) throws IllegalArgumentException {
         String json = readString();
         try {
             return gson.fromJson(json, type);
@@ -589,19 +832,30 @@ public class PacketByteBuf {
         return Double.longBitsToDouble(buf.readLongLE());
     }
 
+    /**
+     * Read the given number of bytes into a new buffer allocated with the allocator of this buffer.
+     * The caller owns the returned buffer and must release it.
+     *
+     * @param length The number of bytes to read
+     * @return The new buffer
+     */
     public PacketByteBuf readBytes(int length) {
-        buf.readBytes(length);
-        return this;
+        return new PacketByteBuf(buf.readBytes(length));
     }
 
     public PacketByteBuf readSlice(int length) {
-        buf.readSlice(length);
-        return this;
+        return new PacketByteBuf(buf.readSlice(length));
     }
 
+    /**
+     * Read a slice of this buffer and retain it.
+     * The caller must release the returned buffer.
+     *
+     * @param length The number of bytes to read
+     * @return The retained slice
+     */
     public PacketByteBuf readRetainedSlice(int length) {
-        buf.readRetainedSlice(length);
-        return this;
+        return new PacketByteBuf(buf.readRetainedSlice(length));
     }
 
     public PacketByteBuf readBytes(ByteBuf dst) {
@@ -819,37 +1073,51 @@ public class PacketByteBuf {
     }
 
     public PacketByteBuf copy(int index, int length) {
-        return new PacketByteBuf(buf.copy());
+        return new PacketByteBuf(buf.copy(index, length));
     }
 
     public PacketByteBuf slice() {
-        buf.slice();
-        return this;
+        return new PacketByteBuf(buf.slice());
     }
 
+    /**
+     * Get a retained slice of the readable bytes of this buffer.
+     * The caller must release the returned buffer.
+     *
+     * @return The retained slice
+     */
     public PacketByteBuf retainedSlice() {
-        buf.retainedSlice();
-        return this;
+        return new PacketByteBuf(buf.retainedSlice());
     }
 
     public PacketByteBuf slice(int index, int length) {
-        buf.slice(index, length);
-        return this;
+        return new PacketByteBuf(buf.slice(index, length));
     }
 
+    /**
+     * Get a retained slice of this buffer.
+     * The caller must release the returned buffer.
+     *
+     * @param index  The index of the slice
+     * @param length The length of the slice
+     * @return The retained slice
+     */
     public PacketByteBuf retainedSlice(int index, int length) {
-        buf.retainedSlice(index, length);
-        return this;
+        return new PacketByteBuf(buf.retainedSlice(index, length));
     }
 
     public PacketByteBuf duplicate() {
-        buf.duplicate();
-        return this;
+        return new PacketByteBuf(buf.duplicate());
     }
 
+    /**
+     * Get a retained duplicate of this buffer.
+     * The caller must release the returned buffer.
+     *
+     * @return The retained duplicate
+     */
     public PacketByteBuf retainedDuplicate() {
-        buf.retainedDuplicate();
-        return this;
+        return new PacketByteBuf(buf.retainedDuplicate());
     }
 
     public int nioBufferCount() {
@@ -950,4 +1218,27 @@ public class PacketByteBuf {
     boolean isAccessible() {
         return buf.refCnt() != 0;
     }
+
+    @Override
+    public int refCnt() {
+        return buf.refCnt();
+    }
+
+    /**
+     * Release the wrapped buffer.
+     * Only the buffers created by the caller (e.g. with {@link #readBytes(int)} or {@link #retainedSlice()})
+     * must be released, the buffers passed to {@link it.multicoredev.mclib.network.protocol.Packet#encode(PacketByteBuf)}
+     * and {@link it.multicoredev.mclib.network.protocol.Packet#decode(PacketByteBuf)} are released by the pipeline.
+     *
+     * @return True if the buffer has been deallocated
+     */
+    @Override
+    public boolean release() {
+        return buf.release();
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return buf.release(decrement);
+    }
 }
@@ -0,0 +1,126 @@
+package it.multicoredev.mclib.network;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+import it.multicoredev.mclib.network.metrics.NetworkMetrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class PacketChannelInitializer extends ChannelInitializer<Channel> {
+    public static final String METRICS = "metrics";
+    public static final String SSL = "ssl";
+    public static final String FLUSH_CONSOLIDATION = "flush-consolidation";
+    public static final String FRAME_DECODER = "frame-decoder";
+    public static final String DECOMPRESSOR = "decompressor";
+    public static final String PACKET_DECODER = "packet-decoder";
+    public static final String COMPRESSOR = "compressor";
+    public static final String PACKET_ENCODER = "packet-encoder";
+    public static final String IDLE_STATE = "idle-state";
+    public static final String KEEP_ALIVE = "keep-alive";
+    public static final String HANDSHAKE = "handshake";
+    public static final String NETWORK_HANDLER = "network-handler";
+
+    private final NetworkSettings settings;
+    private final Supplier<NetworkHandler> handlerFactory;
+
+    /**
+     * Create the initializer of the pipelines of the packet channels.
+     *
+     * @param settings       The settings of the pipeline
+     * @param handlerFactory The factory of the {@link NetworkHandler} added at the end of every pipeline
+     */
+    public PacketChannelInitializer(NetworkSettings settings, Supplier<NetworkHandler> handlerFactory) {
+        this.settings = settings;
+        this.handlerFactory = handlerFactory;
+    }
+
+    public NetworkSettings getSettings() {
+        return settings;
+    }
+
+    @Override
+    protected void initChannel(Channel channel) {
+        ChannelPipeline pipeline = channel.pipeline();
+        NetworkMetrics metrics = settings.getMetrics() != null ? settings.getMetrics().newConnectionMetrics() : null;
+        PacketProtocol protocol = new PacketProtocol(settings.getPacketRegistry());
+        channel.attr(PacketProtocol.KEY).set(protocol);
+
+        if (metrics != null) {
+            pipeline.addLast(METRICS, new MetricsHandler(metrics));
+        }
+
+        SslContext sslContext = settings.getSslContext();
+        if (sslContext != null) {
+            SslHandler sslHandler = newSslHandler(channel, sslContext);
+            sslHandler.setHandshakeTimeoutMillis(settings.getSslHandshakeTimeoutMillis());
+            pipeline.addLast(SSL, sslHandler);
+        }
+
+        if (settings.getFlushConsolidation() > 0) {
+            pipeline.addLast(FLUSH_CONSOLIDATION, new FlushConsolidationHandler(settings.getFlushConsolidation(), true));
+        }
+
+        pipeline.addLast(FRAME_DECODER, new PacketFrameDecoder(settings.getMaxFrameLength()));
+        pipeline.addLast(DECOMPRESSOR, new PacketDecompressor(settings.getMaxFrameLength()));
+        pipeline.addLast(PACKET_DECODER, new PacketDecoder(protocol, metrics));
+
+        boolean compression = settings.getCompressionThreshold() >= 0;
+        if (compression) {
+            pipeline.addLast(COMPRESSOR, new PacketCompressor(settings.getCompressionThreshold(), settings.getCompressionLevel()));
+        }
+        pipeline.addLast(PACKET_ENCODER, new PacketEncoder(protocol, !compression, metrics));
+
+        if (settings.getPingIntervalMillis() > 0 || settings.getIdleTimeoutMillis() > 0) {
+            // The reader idle fires twice in the idle timeout: the first time the peer is pinged, the second the connection is closed
+            long readerIdle = (settings.getIdleTimeoutMillis() + 1) / 2;
+            pipeline.addLast(IDLE_STATE, new IdleStateHandler(readerIdle, settings.getPingIntervalMillis(), 0, TimeUnit.MILLISECONDS));
+        }
+        pipeline.addLast(KEEP_ALIVE, new KeepAliveHandler(metrics));
+        pipeline.addLast(HANDSHAKE, new HandshakeHandler(protocol, settings.getHandshakeTimeoutMillis()));
+
+        NetworkHandler handler = handlerFactory.get();
+        if (handler != null) {
+            handler.configure(settings, metrics);
+            pipeline.addLast(NETWORK_HANDLER, handler);
+        }
+    }
+
+    /**
+     * Create the TLS handler of a channel.
+     * Clients override this to pass the host and the port of the server, used to verify its certificate
+     * and as the key of the cached session for resumption.
+     *
+     * @param channel    The channel
+     * @param sslContext The SSL context of the settings
+     * @return The TLS handler
+     */
+    protected SslHandler newSslHandler(Channel channel, SslContext sslContext) {
+        return sslContext.newHandler(channel.alloc());
+    }
+}
@@ -0,0 +1,102 @@
+package it.multicoredev.mclib.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class PacketCompressor extends MessageToMessageEncoder<ByteBuf> {
+    private final int threshold;
+    private final Deflater deflater;
+    private byte[] input = new byte[0];
+
+    /**
+     * Compress the frames written by {@link PacketEncoder} with zlib.
+     * Frames with a payload smaller than the threshold are passed through untouched.
+     * The compressed frames are marked with {@link PacketFrame#FLAG_COMPRESSED} and carry the uncompressed
+     * length of the payload as a VarInt before the compressed data.
+     *
+     * @param threshold The minimum size of the payload to compress in bytes
+     * @param level     The zlib compression level, from 0 to 9 or -1 for the default level
+     */
+    public PacketCompressor(int threshold, int level) {
+        this.threshold = threshold;
+        this.deflater = new Deflater(level);
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, ByteBuf frame, List<Object> out) throws Exception {
+        int start = frame.readerIndex();
+        int payloadLength = frame.readableBytes() - PacketFrame.LENGTH_SIZE - 1;
+
+        if (payloadLength < threshold || (frame.getByte(start + PacketFrame.LENGTH_SIZE) & PacketFrame.FLAG_COMPRESSED) != 0) {
+            out.add(frame.retain());
+            return;
+        }
+
+        byte flags = frame.getByte(start + PacketFrame.LENGTH_SIZE);
+        int payloadStart = start + PacketFrame.LENGTH_SIZE + 1;
+
+        ByteBuf compressed = ctx.alloc().heapBuffer(payloadLength / 2 + 16);
+        try {
+            PacketByteBuf buf = new PacketByteBuf(compressed);
+            buf.writeInt(0);
+            buf.writeByte(flags | PacketFrame.FLAG_COMPRESSED);
+            buf.writeVarInt(payloadLength);
+            deflate(frame, payloadStart, payloadLength, compressed);
+            compressed.setInt(0, compressed.writerIndex() - PacketFrame.LENGTH_SIZE);
+
+            out.add(compressed);
+        } catch (Throwable t) {
+            compressed.release();
+            throw t;
+        }
+    }
+
+    private void deflate(ByteBuf in, int index, int length, ByteBuf out) {
+        if (in.hasArray()) {
+            deflater.setInput(in.array(), in.arrayOffset() + index, length);
+        } else {
+            if (input.length < length) input = new byte[length];
+            in.getBytes(index, input, 0, length);
+            deflater.setInput(input, 0, length);
+        }
+        deflater.finish();
+
+        while (!deflater.finished()) {
+            out.ensureWritable(8192);
+            int written = deflater.deflate(out.array(), out.arrayOffset() + out.writerIndex(), out.writableBytes());
+            out.writerIndex(out.writerIndex() + written);
+        }
+
+        deflater.reset();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        super.handlerRemoved(ctx);
+        deflater.end();
+    }
+}
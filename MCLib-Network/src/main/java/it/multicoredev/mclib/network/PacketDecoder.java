@@ -2,15 +2,16 @@ package it.multicoredev.mclib.network;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.MessageToMessageDecoder;
 import it.multicoredev.mclib.network.exceptions.DecoderException;
-import it.multicoredev.mclib.network.exceptions.EncoderException;
-import it.multicoredev.mclib.network.exceptions.PacketException;
+import it.multicoredev.mclib.network.metrics.NetworkMetrics;
 import it.multicoredev.mclib.network.protocol.Packet;
 import it.multicoredev.mclib.network.protocol.PacketRegistry;
+import it.multicoredev.mclib.network.protocol.RecyclablePacket;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Arrays;
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * Copyright © 2020 by Lorenzo Magni
@@ -32,32 +33,117 @@ import java.util.List;
  * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
  * THE POSSIBILITY OF SUCH DAMAGE.
  */
-public class PacketDecoder extends ByteToMessageDecoder {
+public class PacketDecoder extends MessageToMessageDecoder<ByteBuf> {
+    private final PacketRegistry registry;
+    private final NetworkMetrics metrics;
+    private final PacketProtocol protocol;
 
+    public PacketDecoder() {
+        this(null);
+    }
+
+    /**
+     * Create a packet decoder.
+     *
+     * @param metrics The metrics recording the decoded packets or null
+     */
+    public PacketDecoder(@Nullable NetworkMetrics metrics) {
+        this(PacketRegistry.getInstance(), metrics);
+    }
+
+    /**
+     * Create a packet decoder.
+     *
+     * @param registry The registry of the packet ids
+     * @param metrics  The metrics recording the decoded packets or null
+     */
+    public PacketDecoder(PacketRegistry registry, @Nullable NetworkMetrics metrics) {
+        if (registry == null) throw new IllegalArgumentException("registry cannot be null");
+        this.registry = registry;
+        this.metrics = metrics;
+        this.protocol = null;
+    }
+
+    /**
+     * Create a packet decoder.
+     *
+     * @param protocol The protocol negotiated with the peer, translating its packet ids
+     * @param metrics  The metrics recording the decoded packets or null
+     */
+    public PacketDecoder(PacketProtocol protocol, @Nullable NetworkMetrics metrics) {
+        if (protocol == null) throw new IllegalArgumentException("protocol cannot be null");
+        this.registry = protocol.getRegistry();
+        this.metrics = metrics;
+        this.protocol = protocol;
+    }
+
+    /**
+     * Decode a single frame produced by {@link PacketFrameDecoder}.
+     * The frame is released by {@link MessageToMessageDecoder} once the packet has been decoded.
+     */
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf byteBuf, List<Object> objects) throws Exception {
-        if (byteBuf.readableBytes() == 0) throw new DecoderException("Packet not readable");
+        if (!byteBuf.isReadable()) throw new DecoderException("Packet not readable");
+
+        long start = metrics != null ? System.nanoTime() : 0;
+        int frameLength = byteBuf.readableBytes() + PacketFrame.LENGTH_SIZE;
 
-        if (byteBuf.readableBytes() < 4) return;
+        PacketByteBuf buf = new PacketByteBuf(byteBuf);
+        byte flags = buf.readByte();
+        if ((flags & PacketFrame.FLAG_COMPRESSED) != 0) throw new DecoderException("Compressed frame received without a decompressor");
 
-        int len = byteBuf.readInt();
-        if (byteBuf.readableBytes() < len) {
-            byteBuf.resetReaderIndex();
+        if ((flags & (PacketFrame.FLAG_PING | PacketFrame.FLAG_PONG)) != 0) {
+            objects.add(new KeepAlive((flags & PacketFrame.FLAG_PONG) != 0, buf.readLong()));
             return;
         }
 
-        PacketByteBuf buf = new PacketByteBuf(byteBuf);
-        int id = buf.readInt();
-        Class<? extends Packet<?>> packetClass = PacketRegistry.getInstance().getPacketClass(id);
+        if ((flags & PacketFrame.FLAG_HANDSHAKE) != 0) {
+            objects.add(readHandshake(buf));
+            return;
+        }
 
-        if (packetClass == null) throw new EncoderException("Packet not registered");
+        int correlationFlags = flags & (PacketFrame.FLAG_REQUEST | PacketFrame.FLAG_RESPONSE);
+        int correlationId = correlationFlags != 0 ? buf.readVarInt() : 0;
 
+        if ((flags & PacketFrame.FLAG_ERROR) != 0) {
+            objects.add(CorrelatedPacket.error(correlationId, buf.readString()));
+            return;
+        }
+
+        int id = buf.readVarInt();
+        Supplier<? extends Packet<?>> factory = protocol != null ? protocol.factory(id) : registry.getPacketFactory(id);
+
+        if (factory == null) throw new DecoderException("Packet not registered");
+
+        Packet<?> packet = factory.get();
         try {
-            Packet<?> packet = packetClass.getConstructor().newInstance();
             packet.decode(buf);
-            objects.add(packet);
-        } catch (IllegalAccessException e) {
-            throw new PacketException("Packets must have an empty constructor");
+
+            if (buf.isReadable()) {
+                throw new DecoderException("Packet " + packet.getClass().getSimpleName() + " was larger than expected, " + buf.readableBytes() + " bytes left");
+            }
+        } catch (Throwable t) {
+            if (packet instanceof RecyclablePacket) ((RecyclablePacket<?>) packet).recycle();
+            throw t;
         }
+
+        if (metrics != null) metrics.recordPacketRead(id, frameLength, System.nanoTime() - start);
+        objects.add(correlationFlags != 0 ? new CorrelatedPacket(packet, correlationFlags, correlationId) : packet);
+    }
+
+    private static Handshake readHandshake(PacketByteBuf buf) throws DecoderException {
+        int protocolVersion = buf.readVarInt();
+        int minProtocolVersion = buf.readVarInt();
+        long fingerprint = buf.readLong();
+
+        int count = buf.readVarInt();
+        if (count < 0 || count > buf.readableBytes() / Integer.BYTES) throw new DecoderException("Invalid handshake, " + count + " packets declared");
+
+        int[] stableIds = new int[count];
+        for (int i = 0; i < count; i++) {
+            stableIds[i] = buf.readInt();
+        }
+
+        return new Handshake(protocolVersion, minProtocolVersion, fingerprint, stableIds);
     }
 }
@@ -0,0 +1,100 @@
+package it.multicoredev.mclib.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import it.multicoredev.mclib.network.exceptions.DecoderException;
+
+import java.util.List;
+import java.util.zip.Inflater;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class PacketDecompressor extends MessageToMessageDecoder<ByteBuf> {
+    private final int maxFrameLength;
+    private final Inflater inflater = new Inflater();
+    private byte[] input = new byte[0];
+
+    /**
+     * Decompress the frames marked with {@link PacketFrame#FLAG_COMPRESSED} by {@link PacketCompressor}.
+     * Uncompressed frames are passed through untouched.
+     *
+     * @param maxFrameLength The maximum length of a decompressed frame
+     */
+    public PacketDecompressor(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf frame, List<Object> out) throws Exception {
+        if (!frame.isReadable()) throw new DecoderException("Packet not readable");
+
+        byte flags = frame.getByte(frame.readerIndex());
+        if ((flags & PacketFrame.FLAG_COMPRESSED) == 0) {
+            out.add(frame.retain());
+            return;
+        }
+
+        PacketByteBuf buf = new PacketByteBuf(frame);
+        buf.skipBytes(1);
+        int length = buf.readVarInt();
+        if (length < 0 || length > maxFrameLength) throw new DecoderException("Decompressed frame too large: " + length);
+
+        ByteBuf decompressed = ctx.alloc().heapBuffer(length + 1);
+        try {
+            decompressed.writeByte(flags & ~PacketFrame.FLAG_COMPRESSED);
+            inflate(frame, decompressed, length);
+            out.add(decompressed);
+        } catch (Throwable t) {
+            decompressed.release();
+            throw t;
+        }
+    }
+
+    private void inflate(ByteBuf in, ByteBuf out, int length) throws Exception {
+        int compressedLength = in.readableBytes();
+        if (in.hasArray()) {
+            inflater.setInput(in.array(), in.arrayOffset() + in.readerIndex(), compressedLength);
+        } else {
+            if (input.length < compressedLength) input = new byte[compressedLength];
+            in.getBytes(in.readerIndex(), input, 0, compressedLength);
+            inflater.setInput(input, 0, compressedLength);
+        }
+        in.skipBytes(compressedLength);
+
+        try {
+            int written = inflater.inflate(out.array(), out.arrayOffset() + out.writerIndex(), length);
+            if (written != length || !inflater.finished()) {
+                throw new DecoderException("Compressed frame length mismatch: expected " + length + " bytes, got " + written);
+            }
+
+            out.writerIndex(out.writerIndex() + written);
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        super.handlerRemoved(ctx);
+        inflater.end();
+    }
+}
@@ -0,0 +1,114 @@
+package it.multicoredev.mclib.network;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+final class PacketDispatcher implements Runnable {
+    private static final int BATCH_SIZE = 64;
+
+    private final ChannelHandlerContext ctx;
+    private final Channel channel;
+    private final NetworkHandler handler;
+    private final Executor executor;
+    private final int maxPending;
+    private final int resumeThreshold;
+
+    private final Queue<Object> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * Process the packets of a connection on an executor, one at a time and in the order they were received.
+     * When maxPending packets are waiting, reading from the channel is paused until half of them have been processed.
+     * The limit is soft: the packets already decoded from the last read are still queued, never dropped,
+     * so the queue can go over it by the packets of a single read.
+     *
+     * @param ctx        The context of the handler in the pipeline of the connection
+     * @param handler    The handler processing the packets
+     * @param executor   The executor running the handler
+     * @param maxPending The number of packets waiting to be processed that pauses the reading
+     */
+    PacketDispatcher(ChannelHandlerContext ctx, NetworkHandler handler, Executor executor, int maxPending) {
+        this.ctx = ctx;
+        this.channel = ctx.channel();
+        this.handler = handler;
+        this.executor = executor;
+        this.maxPending = maxPending;
+        this.resumeThreshold = maxPending / 2;
+    }
+
+    void dispatch(Object msg) {
+        queue.add(msg);
+
+        if (pending.incrementAndGet() >= maxPending && channel.config().isAutoRead()) {
+            channel.config().setAutoRead(false);
+            if (pending.get() <= resumeThreshold) channel.config().setAutoRead(true);
+        }
+
+        schedule();
+    }
+
+    int getPending() {
+        return pending.get();
+    }
+
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) return;
+
+        try {
+            executor.execute(this);
+        } catch (RejectedExecutionException e) {
+            scheduled.set(false);
+            channel.pipeline().fireExceptionCaught(e);
+        }
+    }
+
+    @Override
+    public void run() {
+        Object msg;
+        int processed = 0;
+
+        while (processed < BATCH_SIZE && (msg = queue.poll()) != null) {
+            try {
+                handler.process(ctx, msg);
+            } catch (Throwable t) {
+                channel.pipeline().fireExceptionCaught(t);
+            }
+
+            processed++;
+            if (pending.decrementAndGet() <= resumeThreshold && !channel.config().isAutoRead()) {
+                channel.config().setAutoRead(true);
+            }
+        }
+
+        scheduled.set(false);
+        if (!queue.isEmpty()) schedule();
+    }
+}
@@ -1,14 +1,14 @@
 package it.multicoredev.mclib.network;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
 import it.multicoredev.mclib.network.exceptions.EncoderException;
+import it.multicoredev.mclib.network.metrics.NetworkMetrics;
 import it.multicoredev.mclib.network.protocol.Packet;
 import it.multicoredev.mclib.network.protocol.PacketRegistry;
-
-import java.util.Arrays;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Copyright © 2020 by Lorenzo Magni
@@ -30,20 +30,203 @@ import java.util.Arrays;
  * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
  * THE POSSIBILITY OF SUCH DAMAGE.
  */
-public class PacketEncoder extends MessageToByteEncoder<Packet<?>> {
+public class PacketEncoder extends MessageToByteEncoder<Object> {
+    private final PacketRegistry registry;
+    private final NetworkMetrics metrics;
+    private final PacketProtocol protocol;
+
+    public PacketEncoder() {
+        super();
+        this.registry = PacketRegistry.getInstance();
+        this.metrics = null;
+        this.protocol = null;
+    }
+
+    /**
+     * Create a packet encoder.
+     *
+     * @param preferDirect True to encode the packets in direct buffers, False to use heap buffers
+     *                     (better when the frames are compressed afterwards)
+     */
+    public PacketEncoder(boolean preferDirect) {
+        this(PacketRegistry.getInstance(), preferDirect, null);
+    }
+
+    /**
+     * Create a packet encoder.
+     *
+     * @param preferDirect True to encode the packets in direct buffers, False to use heap buffers
+     *                     (better when the frames are compressed afterwards)
+     * @param metrics      The metrics recording the encoded packets or null
+     */
+    public PacketEncoder(boolean preferDirect, @Nullable NetworkMetrics metrics) {
+        this(PacketRegistry.getInstance(), preferDirect, metrics);
+    }
+
+    /**
+     * Create a packet encoder.
+     *
+     * @param registry     The registry of the packet ids
+     * @param preferDirect True to encode the packets in direct buffers, False to use heap buffers
+     *                     (better when the frames are compressed afterwards)
+     * @param metrics      The metrics recording the encoded packets or null
+     */
+    public PacketEncoder(PacketRegistry registry, boolean preferDirect, @Nullable NetworkMetrics metrics) {
+        super(preferDirect);
+        if (registry == null) throw new IllegalArgumentException("registry cannot be null");
+        this.registry = registry;
+        this.metrics = metrics;
+        this.protocol = null;
+    }
+
+    /**
+     * Create a packet encoder.
+     *
+     * @param protocol     The protocol negotiated with the peer, used to refuse the packets it doesn't know
+     * @param preferDirect True to encode the packets in direct buffers, False to use heap buffers
+     *                     (better when the frames are compressed afterwards)
+     * @param metrics      The metrics recording the encoded packets or null
+     */
+    public PacketEncoder(PacketProtocol protocol, boolean preferDirect, @Nullable NetworkMetrics metrics) {
+        super(preferDirect);
+        if (protocol == null) throw new IllegalArgumentException("protocol cannot be null");
+        this.registry = protocol.getRegistry();
+        this.metrics = metrics;
+        this.protocol = protocol;
+    }
 
     @Override
-    protected void encode(ChannelHandlerContext ctx, Packet packet, ByteBuf byteBuf) throws Exception {
-        Integer id = PacketRegistry.getInstance().getPacketId(packet);
+    public boolean acceptOutboundMessage(Object msg) {
+        return msg instanceof Packet || msg instanceof CorrelatedPacket || msg instanceof KeepAlive || msg instanceof Handshake;
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, Object msg, ByteBuf byteBuf) throws Exception {
+        if (msg instanceof KeepAlive) {
+            KeepAlive keepAlive = (KeepAlive) msg;
+            byteBuf.writeInt(1 + Long.BYTES);
+            byteBuf.writeByte(keepAlive.isPong() ? PacketFrame.FLAG_PONG : PacketFrame.FLAG_PING);
+            byteBuf.writeLong(keepAlive.getTimestamp());
+            return;
+        }
+
+        if (msg instanceof Handshake) {
+            writeHandshake((Handshake) msg, byteBuf);
+            return;
+        }
+
+        if (msg instanceof CorrelatedPacket && ((CorrelatedPacket) msg).isError()) {
+            writeError((CorrelatedPacket) msg, byteBuf);
+            return;
+        }
+
+        long start = metrics != null ? System.nanoTime() : 0;
+        int startIndex = byteBuf.writerIndex();
+
+        int id;
+        if (msg instanceof CorrelatedPacket) {
+            CorrelatedPacket correlated = (CorrelatedPacket) msg;
+            id = packetId(correlated.getPacket());
+            writeFrame(correlated.getPacket(), id, correlated.getFlags(), correlated.getCorrelationId(), byteBuf);
+        } else {
+            id = packetId((Packet<?>) msg);
+            writeFrame((Packet<?>) msg, id, 0, 0, byteBuf);
+        }
+
+        if (metrics != null) metrics.recordPacketWritten(id, byteBuf.writerIndex() - startIndex, System.nanoTime() - start);
+    }
+
+    /**
+     * Encode a packet of the default registry in a complete frame outside of a pipeline.
+     *
+     * @param alloc  The allocator of the frame
+     * @param packet The packet to encode
+     * @return The frame
+     * @throws EncoderException If the packet is not registered or cannot be encoded
+     * @see #encode(ByteBufAllocator, PacketRegistry, Packet)
+     */
+    public static ByteBuf encode(ByteBufAllocator alloc, Packet<?> packet) throws EncoderException {
+        return encode(alloc, PacketRegistry.getInstance(), packet);
+    }
+
+    /**
+     * Encode a packet in a complete frame outside of a pipeline.
+     * The frame can be written to many channels (with {@link ByteBuf#retainedDuplicate()}) without encoding
+     * the packet again, the caller is responsible for releasing it.
+     *
+     * @param alloc    The allocator of the frame
+     * @param registry The registry of the packet ids
+     * @param packet   The packet to encode
+     * @return The frame
+     * @throws EncoderException If the packet is not registered or cannot be encoded
+     */
+    public static ByteBuf encode(ByteBufAllocator alloc, PacketRegistry registry, Packet<?> packet) throws EncoderException {
+        ByteBuf byteBuf = alloc.ioBuffer();
+        try {
+            writeFrame(packet, registryId(registry, packet), 0, 0, byteBuf);
+            return byteBuf;
+        } catch (Throwable t) {
+            byteBuf.release();
+            throw t;
+        }
+    }
+
+    /**
+     * Encode the packet directly into the buffer.
+     * The length prefix is reserved before writing the flags, the id and the body and it's filled in at the end,
+     * so the packet is written in a single pass without intermediate buffers or copies.
+     * Requests and responses carry their correlation id right after the flags.
+     */
+    private static void writeFrame(Packet<?> packet, int id, int flags, int correlationId, ByteBuf byteBuf) throws EncoderException {
+        int lengthIndex = byteBuf.writerIndex();
+        byteBuf.writeInt(0);
+        byteBuf.writeByte(flags);
+
+        PacketByteBuf buf = new PacketByteBuf(byteBuf);
+        if (flags != 0) buf.writeVarInt(correlationId);
+        buf.writeVarInt(id);
+        packet.encode(buf);
+
+        byteBuf.setInt(lengthIndex, byteBuf.writerIndex() - lengthIndex - PacketFrame.LENGTH_SIZE);
+    }
+
+    private int packetId(Packet<?> packet) throws EncoderException {
+        return protocol != null ? protocol.packetId(packet) : registryId(registry, packet);
+    }
+
+    private static int registryId(PacketRegistry registry, Packet<?> packet) throws EncoderException {
+        Integer id = registry.getPacketId(packet);
         if (id == null) throw new EncoderException("Unregistered packet.");
 
+        return id;
+    }
+
+    private static void writeError(CorrelatedPacket error, ByteBuf byteBuf) {
+        int lengthIndex = byteBuf.writerIndex();
+        byteBuf.writeInt(0);
+        byteBuf.writeByte(error.getFlags());
+
         PacketByteBuf buf = new PacketByteBuf(byteBuf);
+        buf.writeVarInt(error.getCorrelationId());
+        buf.writeString(error.getError());
 
-        PacketByteBuf packetBuf = new PacketByteBuf(Unpooled.buffer());
-        packetBuf.writeInt(id);
-        packet.encode(packetBuf);
+        byteBuf.setInt(lengthIndex, byteBuf.writerIndex() - lengthIndex - PacketFrame.LENGTH_SIZE);
+    }
+
+    private static void writeHandshake(Handshake handshake, ByteBuf byteBuf) {
+        int lengthIndex = byteBuf.writerIndex();
+        byteBuf.writeInt(0);
+        byteBuf.writeByte(PacketFrame.FLAG_HANDSHAKE);
+
+        PacketByteBuf buf = new PacketByteBuf(byteBuf);
+        buf.writeVarInt(handshake.getProtocolVersion());
+        buf.writeVarInt(handshake.getMinProtocolVersion());
+        buf.writeLong(handshake.getFingerprint());
+        buf.writeVarInt(handshake.getStableIds().length);
+        for (int stableId : handshake.getStableIds()) {
+            buf.writeInt(stableId);
+        }
 
-        buf.writeInt(packetBuf.readableBytes());
-        buf.writeBytes(packetBuf.buf());
+        byteBuf.setInt(lengthIndex, byteBuf.writerIndex() - lengthIndex - PacketFrame.LENGTH_SIZE);
     }
 }
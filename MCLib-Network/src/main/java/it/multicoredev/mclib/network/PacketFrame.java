@@ -0,0 +1,62 @@
+package it.multicoredev.mclib.network;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public final class PacketFrame {
+    /**
+     * Size of the length prefix of every frame.
+     */
+    public static final int LENGTH_SIZE = 4;
+    /**
+     * The payload of the frame, after the uncompressed length, is compressed with zlib.
+     */
+    public static final int FLAG_COMPRESSED = 0x01;
+    /**
+     * The frame is a request waiting for a response, the correlation id (VarInt) follows the flags.
+     */
+    public static final int FLAG_REQUEST = 0x02;
+    /**
+     * The frame is the response to a request, the correlation id (VarInt) of the request follows the flags.
+     */
+    public static final int FLAG_RESPONSE = 0x04;
+    /**
+     * The frame is a keepalive ping, the payload is the send time (long) echoed by the pong.
+     */
+    public static final int FLAG_PING = 0x08;
+    /**
+     * The frame is the answer to a ping, the payload is the send time (long) of the ping.
+     */
+    public static final int FLAG_PONG = 0x10;
+    /**
+     * The frame is the handshake sent by both peers when the connection is established, the payload is the protocol
+     * version, the minimum protocol version (VarInts), the registry fingerprint (long) and the stable packet ids
+     * (VarInt count followed by ints).
+     */
+    public static final int FLAG_HANDSHAKE = 0x20;
+    /**
+     * Set together with {@link #FLAG_RESPONSE} when the peer could not answer the request: the payload after the
+     * correlation id is the error message (string) instead of a packet.
+     */
+    public static final int FLAG_ERROR = 0x40;
+
+    private PacketFrame() {
+    }
+}
@@ -0,0 +1,184 @@
+package it.multicoredev.mclib.network;
+
+import io.netty.util.AttributeKey;
+import it.multicoredev.mclib.network.exceptions.DecoderException;
+import it.multicoredev.mclib.network.exceptions.EncoderException;
+import it.multicoredev.mclib.network.protocol.Packet;
+import it.multicoredev.mclib.network.protocol.PacketRegistry;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public final class PacketProtocol {
+    /**
+     * The attribute of the channels holding the protocol of the connection.
+     */
+    public static final AttributeKey<PacketProtocol> KEY = AttributeKey.valueOf("mclib-protocol");
+
+    private final PacketRegistry registry;
+    private volatile Negotiated negotiated;
+
+    /**
+     * Create the protocol of a connection, negotiated by the {@link HandshakeHandler}.
+     *
+     * @param registry The registry of the local packets
+     */
+    public PacketProtocol(PacketRegistry registry) {
+        this.registry = registry;
+    }
+
+    public PacketRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Return true if the handshake has been completed.
+     *
+     * @return True if negotiated, False otherwise
+     */
+    public boolean isNegotiated() {
+        return negotiated != null;
+    }
+
+    /**
+     * Get the protocol version agreed with the peer.
+     *
+     * @return The protocol version or -1 if the handshake has not been completed
+     */
+    public int getProtocolVersion() {
+        Negotiated negotiated = this.negotiated;
+        return negotiated != null ? negotiated.version : -1;
+    }
+
+    /**
+     * Return true if the peer knows the packet with the given id.
+     *
+     * @param id The id of the packet in the local registry
+     * @return True if the packet can be sent to the peer, False if it's unknown or the handshake has not been completed
+     */
+    public boolean isSupported(int id) {
+        Negotiated negotiated = this.negotiated;
+        if (negotiated == null || id < 0 || id >= negotiated.size) return false;
+
+        return negotiated.outbound == null || negotiated.outbound[id];
+    }
+
+    /**
+     * Freeze the registry and describe it in the handshake sent to the peer.
+     */
+    Handshake localHandshake() {
+        registry.freeze();
+        return new Handshake(registry.getProtocolVersion(), registry.getMinProtocolVersion(), registry.getFingerprint(), registry.getStableIds());
+    }
+
+    /**
+     * Agree on the protocol version and build the dispatch tables of the connection.
+     * When the fingerprints match the packet ids of the peers are the same and the registry is used directly,
+     * otherwise the ids of the peer are translated with a table indexed by its packet ids, and only the packets
+     * known by both peers can be exchanged.
+     *
+     * @param remote The handshake of the peer
+     * @throws DecoderException If the protocol versions are not compatible
+     */
+    void negotiate(Handshake remote) throws DecoderException {
+        int version = Math.min(registry.getProtocolVersion(), remote.getProtocolVersion());
+        if (version < registry.getMinProtocolVersion() || version < remote.getMinProtocolVersion()) {
+            throw new DecoderException("Incompatible protocol versions: local " + registry.getMinProtocolVersion() + "-" + registry.getProtocolVersion()
+                    + ", remote " + remote.getMinProtocolVersion() + "-" + remote.getProtocolVersion());
+        }
+
+        int[] localIds = registry.getStableIds();
+        int[] remoteIds = remote.getStableIds();
+        if (remote.getFingerprint() == registry.getFingerprint() && Arrays.equals(localIds, remoteIds)) {
+            negotiated = new Negotiated(version, localIds.length, null, null);
+            return;
+        }
+
+        Supplier<? extends Packet<?>>[] inbound = newFactoryArray(remoteIds.length);
+        boolean[] outbound = new boolean[localIds.length];
+        for (int i = 0; i < remoteIds.length; i++) {
+            Integer id = registry.getPacketIdByStableId(remoteIds[i]);
+            if (id == null) continue;
+
+            inbound[i] = registry.getPacketFactory(id);
+            outbound[id] = true;
+        }
+
+        negotiated = new Negotiated(version, localIds.length, inbound, outbound);
+    }
+
+    /**
+     * Get the id of a packet to send, from the local registry.
+     *
+     * @param packet The packet
+     * @return The id of the packet
+     * @throws EncoderException If the packet is not registered or the peer doesn't know it
+     */
+    int packetId(Packet<?> packet) throws EncoderException {
+        Integer id = registry.getPacketId(packet);
+        if (id == null) throw new EncoderException("Unregistered packet.");
+
+        Negotiated negotiated = this.negotiated;
+        if (negotiated != null && negotiated.outbound != null && !negotiated.outbound[id]) {
+            throw new EncoderException("Packet " + packet.getClass().getSimpleName() + " is not supported by the peer");
+        }
+
+        return id;
+    }
+
+    /**
+     * Get the factory of a received packet from the id of the peer.
+     *
+     * @param id The id of the packet in the registry of the peer
+     * @return The factory of the packet or null if the packet is unknown
+     * @throws DecoderException If the handshake has not been completed
+     */
+    @Nullable
+    Supplier<? extends Packet<?>> factory(int id) throws DecoderException {
+        Negotiated negotiated = this.negotiated;
+        if (negotiated == null) throw new DecoderException("Packet received before the handshake");
+        if (negotiated.inbound == null) return registry.getPacketFactory(id);
+
+        return id >= 0 && id < negotiated.inbound.length ? negotiated.inbound[id] : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Supplier<? extends Packet<?>>[] newFactoryArray(int length) {
+        return (Supplier<? extends Packet<?>>[]) new Supplier<?>[length];
+    }
+
+    private static final class Negotiated {
+        private final int version;
+        private final int size;
+        private final Supplier<? extends Packet<?>>[] inbound;
+        private final boolean[] outbound;
+
+        private Negotiated(int version, int size, Supplier<? extends Packet<?>>[] inbound, boolean[] outbound) {
+            this.version = version;
+            this.size = size;
+            this.inbound = inbound;
+            this.outbound = outbound;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package it.multicoredev.mclib.network;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import it.multicoredev.mclib.network.protocol.Packet;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+final class PendingRequests {
+    /**
+     * A single timer shared by all the connections: a timeout costs a slot in the wheel and no thread is woken up
+     * per request, the precision of 10ms is more than enough for request timeouts.
+     */
+    private static final Timer TIMER = new HashedWheelTimer(new DefaultThreadFactory("mclib-request-timer", true), 10, TimeUnit.MILLISECONDS);
+
+    private final Map<Integer, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * Register a new request.
+     *
+     * @param timeoutMillis The timeout of the request, 0 for no timeout
+     * @return The pending request
+     */
+    Pending create(long timeoutMillis) {
+        Pending created;
+        do {
+            created = new Pending(nextId.incrementAndGet());
+        } while (pending.putIfAbsent(created.id, created) != null);
+
+        Pending request = created;
+
+        if (timeoutMillis > 0) {
+            request.timeout = TIMER.newTimeout(t -> {
+                if (pending.remove(request.id, request)) {
+                    request.future.completeExceptionally(new TimeoutException("Request " + request.id + " timed out after " + timeoutMillis + "ms"));
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        return request;
+    }
+
+    /**
+     * Complete a request with its response.
+     *
+     * @param id       The correlation id of the request
+     * @param response The response
+     * @return True if the request was pending, False if it already timed out or it's unknown
+     */
+    boolean complete(int id, Packet<?> response) {
+        Pending request = pending.remove(id);
+        if (request == null) return false;
+
+        request.cancelTimeout();
+        request.future.complete(response);
+        return true;
+    }
+
+    /**
+     * Fail a request (e.g. because it could not be sent).
+     *
+     * @param request The request
+     * @param cause   The cause of the failure
+     */
+    void fail(Pending request, Throwable cause) {
+        if (pending.remove(request.id, request)) {
+            request.cancelTimeout();
+            request.future.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Fail a request from its correlation id (e.g. because the peer could not answer it).
+     *
+     * @param id    The correlation id of the request
+     * @param cause The cause of the failure
+     * @return True if the request was pending, False if it already timed out or it's unknown
+     */
+    boolean fail(int id, Throwable cause) {
+        Pending request = pending.get(id);
+        if (request == null) return false;
+
+        fail(request, cause);
+        return true;
+    }
+
+    /**
+     * Fail all the pending requests (e.g. because the connection has been closed).
+     *
+     * @param cause The cause of the failure
+     */
+    void failAll(Throwable cause) {
+        for (Pending request : pending.values()) {
+            fail(request, cause);
+        }
+    }
+
+    int size() {
+        return pending.size();
+    }
+
+    static final class Pending {
+        final int id;
+        final CompletableFuture<Packet<?>> future = new CompletableFuture<>();
+        volatile Timeout timeout;
+
+        private Pending(int id) {
+            this.id = id;
+        }
+
+        private void cancelTimeout() {
+            Timeout timeout = this.timeout;
+            if (timeout != null) timeout.cancel();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package it.multicoredev.mclib.network;
+
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import org.jetbrains.annotations.Nullable;
+
+import javax.net.ssl.SSLException;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.File;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public final class SslContexts {
+    /**
+     * Number of TLS sessions kept for resumption.
+     */
+    public static final long SESSION_CACHE_SIZE = 1024;
+    /**
+     * Lifetime of the cached TLS sessions and tickets in seconds.
+     */
+    public static final long SESSION_TIMEOUT = 3600;
+
+    private SslContexts() {
+    }
+
+    /**
+     * Get the fastest SSL engine available.
+     * The OpenSSL engine (netty-tcnative, usually BoringSSL) is used when it's on the classpath, otherwise the JDK engine.
+     *
+     * @return The SSL provider
+     */
+    public static SslProvider bestProvider() {
+        return OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK;
+    }
+
+    /**
+     * Create the SSL context of a server from PEM files.
+     *
+     * @param keyCertChain The PEM file of the certificate chain
+     * @param key          The PEM file of the PKCS#8 private key
+     * @return The SSL context
+     * @throws SSLException If the context cannot be created
+     */
+    public static SslContext forServer(File keyCertChain, File key) throws SSLException {
+        return configure(SslContextBuilder.forServer(keyCertChain, key)).build();
+    }
+
+    /**
+     * Create the SSL context of a server.
+     *
+     * @param key          The private key
+     * @param keyCertChain The certificate chain
+     * @return The SSL context
+     * @throws SSLException If the context cannot be created
+     */
+    public static SslContext forServer(PrivateKey key, X509Certificate... keyCertChain) throws SSLException {
+        return configure(SslContextBuilder.forServer(key, keyCertChain)).build();
+    }
+
+    /**
+     * Create the SSL context of a client.
+     * The same context must be used by all the connections to the same server, the cached sessions are kept in it.
+     *
+     * @param trustCertCollection The PEM file of the trusted certificates or null to use the trust store of the JVM
+     * @return The SSL context
+     * @throws SSLException If the context cannot be created
+     */
+    public static SslContext forClient(@Nullable File trustCertCollection) throws SSLException {
+        return configure(SslContextBuilder.forClient().trustManager(trustCertCollection)).build();
+    }
+
+    /**
+     * Create the SSL context of a client.
+     *
+     * @param trustManagerFactory The trust manager factory validating the certificates of the servers
+     * @return The SSL context
+     * @throws SSLException If the context cannot be created
+     */
+    public static SslContext forClient(TrustManagerFactory trustManagerFactory) throws SSLException {
+        return configure(SslContextBuilder.forClient().trustManager(trustManagerFactory)).build();
+    }
+
+    /**
+     * Use the best engine and keep the sessions for resumption: a client reconnecting to the same server resumes the
+     * session (with a session ticket in TLS 1.3) and skips the key exchange.
+     */
+    private static SslContextBuilder configure(SslContextBuilder builder) {
+        return builder.sslProvider(bestProvider())
+                .sessionCacheSize(SESSION_CACHE_SIZE)
+                .sessionTimeout(SESSION_TIMEOUT);
+    }
+}
@@ -1,18 +1,36 @@
 package it.multicoredev.mclib.network.client;
 
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
-import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.util.internal.PlatformDependent;
+import it.multicoredev.mclib.network.HandshakeHandler;
 import it.multicoredev.mclib.network.NetworkHandler;
-import it.multicoredev.mclib.network.PacketDecoder;
-import it.multicoredev.mclib.network.PacketEncoder;
+import it.multicoredev.mclib.network.NetworkSettings;
+import it.multicoredev.mclib.network.PacketChannelInitializer;
+import it.multicoredev.mclib.network.Transport;
 import it.multicoredev.mclib.network.exceptions.PacketSendException;
+import it.multicoredev.mclib.network.protocol.ConnectionState;
 import it.multicoredev.mclib.network.protocol.Packet;
 import it.multicoredev.mclib.network.protocol.PacketListener;
+import org.jetbrains.annotations.Nullable;
+
+import javax.net.ssl.SSLParameters;
+import java.nio.channels.ClosedChannelException;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * Copyright © 2020 by Lorenzo Magni
@@ -36,50 +54,407 @@ import it.multicoredev.mclib.network.protocol.PacketListener;
  */
 public class ClientSocket {
     private final ServerAddress serverAddress;
-    private final NetworkHandler networkHandler;
+    private final Supplier<? extends NetworkHandler> handlerFactory;
+    private final PacketListener packetListener;
+    private final NetworkSettings settings;
+    private volatile NetworkHandler networkHandler;
+    private volatile Queue<Buffered> replay;
+    private Channel channel;
+    private Bootstrap bootstrap;
+    private boolean running;
+    private int attempts;
+    private ScheduledFuture<?> reconnectTask;
+    private CompletableFuture<Void> terminated = CompletableFuture.completedFuture(null);
 
-    public ClientSocket(ServerAddress serverAddress, NetworkHandler networkHandler, PacketListener packetListener) {
+    /**
+     * Create a client.
+     * A new {@link NetworkHandler} is created for every connection, the packet listener is kept by the client and
+     * handed to the handler of every connection with {@link PacketListener#setNetworkHandler(NetworkHandler)}.
+     *
+     * @param serverAddress  The address of the server
+     * @param handlerFactory The factory of the handlers of the connections, it must return a new handler at every call
+     * @param packetListener The listener of the packets and of the connection states
+     * @param settings       The settings of the client
+     */
+    public ClientSocket(ServerAddress serverAddress, Supplier<? extends NetworkHandler> handlerFactory, PacketListener packetListener, NetworkSettings settings) {
         this.serverAddress = serverAddress;
-        this.networkHandler = networkHandler;
-        this.networkHandler.setPacketListener(packetListener);
+        this.handlerFactory = handlerFactory;
+        this.packetListener = packetListener;
+        this.settings = settings;
     }
 
-    public void connect() throws InterruptedException {
-        EventLoopGroup child = new NioEventLoopGroup();
+    public ClientSocket(ServerAddress serverAddress, Supplier<? extends NetworkHandler> handlerFactory, PacketListener packetListener) {
+        this(serverAddress, handlerFactory, packetListener, new NetworkSettings());
+    }
+
+    public NetworkSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Connect to the server without blocking the calling thread.
+     * The client uses the worker group of the settings or, if not set, the event loop group shared by all the
+     * clients of the same transport (see {@link Transport#getSharedEventLoopGroup()}), whose threads are daemon threads.
+     * <p>
+     * With {@link NetworkSettings#setAutoReconnect(boolean)} the client keeps connecting again, even if this first
+     * attempt fails, until {@link #close()} is called.
+     *
+     * @return A future completed when the connection is established and the handshake with the server is done,
+     * so packets can be sent right away, or completed exceptionally if the connection or the handshake fails
+     * @throws IllegalStateException If the client is already connected
+     */
+    public synchronized CompletableFuture<Void> connectAsync() {
+        if (running) throw new IllegalStateException("Client already connected");
 
-        ChannelInitializer<SocketChannel> channelInitializer = new ChannelInitializer<SocketChannel>() {
+        Transport transport = settings.getTransport();
+        EventLoopGroup group = settings.getWorkerGroup() != null ? settings.getWorkerGroup() : transport.getSharedEventLoopGroup();
+
+        if (settings.getSslContext() != null && !settings.getSslContext().isClient()) throw new IllegalStateException("ClientSocket requires a client SslContext");
+
+        PacketChannelInitializer channelInitializer = new PacketChannelInitializer(settings, this::newNetworkHandler) {
             @Override
-            protected void initChannel(SocketChannel channel) {
-                channel.pipeline().addLast(new PacketEncoder(), new PacketDecoder(), networkHandler);
+            protected SslHandler newSslHandler(Channel channel, SslContext sslContext) {
+                SslHandler handler = sslContext.newHandler(channel.alloc(), serverAddress.getIp(), serverAddress.getPort());
+                if (!settings.isHostnameVerification()) return handler;
+
+                SSLParameters parameters = handler.engine().getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                handler.engine().setSSLParameters(parameters);
+                return handler;
             }
         };
 
         Bootstrap bootstrap = new Bootstrap();
-        bootstrap.group(child);
-        bootstrap.channel(NioSocketChannel.class);
+        bootstrap.group(group);
+        bootstrap.channel(transport.getChannelClass());
+        bootstrap.option(ChannelOption.WRITE_BUFFER_WATER_MARK, settings.getWriteBufferWaterMark());
+        bootstrap.option(ChannelOption.ALLOCATOR, settings.getAllocator());
         bootstrap.handler(channelInitializer);
 
+        this.bootstrap = bootstrap;
+        if (replay == null && settings.getReplayBufferSize() > 0) this.replay = new ArrayBlockingQueue<>(settings.getReplayBufferSize());
+        this.running = true;
+        this.attempts = 0;
+        this.terminated = new CompletableFuture<>();
+        return doConnect();
+    }
+
+    private synchronized CompletableFuture<Void> doConnect() {
+        ChannelFuture future = bootstrap.connect(serverAddress.getIp(), serverAddress.getPort());
+        channel = future.channel();
+
+        CompletableFuture<Void> connected = new CompletableFuture<>();
+        future.addListener(f -> {
+            if (!f.isSuccess()) {
+                connected.completeExceptionally(f.cause());
+                future.channel().close();
+                return;
+            }
+
+            connected();
+            // The connect listeners run before the channel becomes active, so the handshake handler is still in the pipeline
+            HandshakeHandler handshake = future.channel().pipeline().get(HandshakeHandler.class);
+            if (handshake == null) {
+                if (future.channel().isActive()) connected.complete(null);
+                else connected.completeExceptionally(new ClosedChannelException());
+                return;
+            }
+
+
+            NetworkHandler handler = (NetworkHandler) future.channel().pipeline().get(PacketChannelInitializer.NETWORK_HANDLER);
+            handshake.handshakeFuture().addListener(h -> {
+                if (!h.isSuccess()) {
+                    connected.completeExceptionally(h.cause());
+                    return;
+                }
+
+                replayBuffered(handler);
+                connected.complete(null);
+            });
+        });
+        channel.closeFuture().addListener(f -> disconnected());
+
+        return connected;
+    }
+
+    private synchronized void connected() {
+        attempts = 0;
+    }
+
+    /**
+     * Create the handler of a new connection and make it the current one.
+     */
+    private NetworkHandler newNetworkHandler() {
+        NetworkHandler handler = handlerFactory.get();
+        packetListener.setNetworkHandler(handler);
+        handler.setPacketListener(packetListener);
+        networkHandler = handler;
+        return handler;
+    }
+
+    /**
+     * Schedule the next connection attempt or, if the client has been closed or doesn't reconnect,
+     * complete the termination of the client.
+     */
+    private synchronized void disconnected() {
+        if (!running || !settings.isAutoReconnect()) {
+            running = false;
+            discardBuffered();
+            packetListener.onConnectionStateChanged(ConnectionState.CLOSED);
+            terminated.complete(null);
+            return;
+        }
+
+        long delay = nextReconnectDelay(attempts++);
+        packetListener.onConnectionStateChanged(ConnectionState.RECONNECTING);
+        reconnectTask = bootstrap.config().group().schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void reconnect() {
+        if (running) doConnect();
+    }
+
+    /**
+     * Get the delay of a reconnection attempt: the initial delay doubled at every failed attempt up to the maximum,
+     * minus a random jitter of up to half of it.
+     */
+    private long nextReconnectDelay(int attempt) {
+        long max = settings.getReconnectMaxDelayMillis();
+        long delay = settings.getReconnectInitialDelayMillis() << Math.min(attempt, 30);
+        if (delay <= 0 || delay > max) delay = max;
+
+        return delay - ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * Connect to the server and block the calling thread until the connection is closed.
+     * With {@link NetworkSettings#setAutoReconnect(boolean)} the thread is blocked until {@link #close()} is called.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public void connect() throws InterruptedException {
         try {
-            ChannelFuture future = bootstrap.connect(serverAddress.getIp(), serverAddress.getPort()).sync();
-            future.channel().closeFuture().sync();
-        } finally {
-            child.shutdownGracefully();
+            CompletableFuture<Void> connected = connectAsync();
+            CompletableFuture<Void> terminated;
+            synchronized (this) {
+                terminated = this.terminated;
+            }
+
+            if (!settings.isAutoReconnect()) connected.get();
+            terminated.get();
+        } catch (ExecutionException e) {
+            PlatformDependent.throwException(e.getCause());
         }
     }
 
+    /**
+     * Close the connection gracefully without blocking the calling thread.
+     * The packets already written are flushed before the connection is closed.
+     *
+     * @return A future completed when the connection has been closed
+     */
+    public synchronized CompletableFuture<Void> close() {
+        running = false;
+        if (reconnectTask != null) reconnectTask.cancel(false);
+
+        Channel channel = this.channel;
+        if (channel == null || !channel.isOpen()) {
+            if (!terminated.isDone()) {
+                discardBuffered();
+                packetListener.onConnectionStateChanged(ConnectionState.CLOSED);
+                terminated.complete(null);
+            }
+            return terminated;
+        }
+
+        channel.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+        return terminated;
+    }
+
     public void sendPacket(Packet<?> packet) throws PacketSendException {
-        networkHandler.sendPacket(packet);
+        sendPacket(packet, true);
+    }
+
+    /**
+     * Send a packet on the current connection.
+     * With {@link NetworkSettings#setReplayBufferSize(int)} the packets sent while the connection is down are buffered
+     * and sent in order, before any other packet, when the client connects again.
+     *
+     * @param packet The packet to send
+     * @param flush  True to flush the packet immediately, False to only write it
+     * @throws PacketSendException If the packet cannot be written or the connection is down and the packet cannot be buffered
+     */
+    public void sendPacket(Packet<?> packet, boolean flush) throws PacketSendException {
+        NetworkHandler handler = networkHandler;
+        if (handler != null && handler.isConnected() || replay == null) {
+            if (handler == null) throw new PacketSendException("Not connected");
+            handler.sendPacket(packet, flush);
+            return;
+        }
+
+        buffer(new Buffered(packet, null, 0));
+    }
+
+    public void flush() throws PacketSendException {
+        NetworkHandler handler = networkHandler;
+        if (handler != null) handler.flush();
+    }
+
+    public boolean trySendPacket(Packet<?> packet) throws PacketSendException {
+        NetworkHandler handler = networkHandler;
+        return handler != null && handler.trySendPacket(packet);
+    }
+
+    public <R extends Packet<?>> CompletableFuture<R> request(Packet<?> request) {
+        return request(request, settings.getRequestTimeoutMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send a request on the current connection and get a future completed with the response of the server.
+     * With {@link NetworkSettings#setReplayBufferSize(int)} the requests sent while the connection is down are
+     * buffered like the packets, their timeout starts when they are sent.
+     *
+     * @param request The request packet
+     * @param timeout The timeout of the request, 0 for no timeout
+     * @param unit    The unit of the timeout
+     * @param <R>     The type of the response packet
+     * @return The future of the response
+     * @see NetworkHandler#request(Packet, long, TimeUnit)
+     */
+    @SuppressWarnings("unchecked")
+    public <R extends Packet<?>> CompletableFuture<R> request(Packet<?> request, long timeout, TimeUnit unit) {
+        NetworkHandler handler = networkHandler;
+        if (handler != null && handler.isConnected() || replay == null) {
+            if (handler != null) return handler.request(request, timeout, unit);
+
+            CompletableFuture<R> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new PacketSendException("Not connected"));
+            return failed;
+        }
+
+        CompletableFuture<Packet<?>> response = new CompletableFuture<>();
+        try {
+            buffer(new Buffered(request, response, unit.toMillis(timeout)));
+        } catch (PacketSendException e) {
+            response.completeExceptionally(e);
+        }
+        return (CompletableFuture<R>) (CompletableFuture<?>) response;
+    }
+
+    /**
+     * Keep a packet sent while the connection is down.
+     * If the connection has been established in the meantime the packet is replayed immediately, otherwise it's
+     * replayed when the handshake of the next connection is done.
+     */
+    private void buffer(Buffered buffered) throws PacketSendException {
+        if (!replay.offer(buffered)) throw new PacketSendException("Replay buffer full: the connection is down");
+
+        NetworkHandler handler = networkHandler;
+        if (handler != null && handler.isConnected()) handler.getChannel().eventLoop().execute(() -> replayBuffered(handler));
+    }
+
+    /**
+     * Send the packets buffered while the connection was down, in the order they were sent.
+     * Always called on the event loop of the connection, before any packet sent after the connection is established.
+     */
+    private void replayBuffered(NetworkHandler handler) {
+        Queue<Buffered> replay = this.replay;
+        if (replay == null || replay.isEmpty()) return;
+
+        Buffered buffered;
+        while (handler.isConnected() && (buffered = replay.poll()) != null) {
+            buffered.send(handler);
+        }
+
+        try {
+            handler.flush();
+        } catch (PacketSendException e) {
+            handler.getChannel().pipeline().fireExceptionCaught(e);
+        }
+    }
+
+    /**
+     * Fail the requests buffered when the client is closed and drop the packets.
+     */
+    private void discardBuffered() {
+        Queue<Buffered> replay = this.replay;
+        if (replay == null) return;
+
+        Buffered buffered;
+        while ((buffered = replay.poll()) != null) {
+            if (buffered.response != null) buffered.response.completeExceptionally(new PacketSendException("Client closed"));
+        }
+    }
+
+    /**
+     * Get the number of packets buffered while the connection is down.
+     *
+     * @return The number of buffered packets
+     */
+    public int getBufferedPackets() {
+        Queue<Buffered> replay = this.replay;
+        return replay != null ? replay.size() : 0;
+    }
+
+    public boolean isWritable() {
+        NetworkHandler handler = networkHandler;
+        return handler != null && handler.isWritable();
     }
 
     public boolean isConnected() {
-        return networkHandler.isConnected();
+        NetworkHandler handler = networkHandler;
+        return handler != null && handler.isConnected();
     }
 
+    /**
+     * Close the current connection.
+     * With {@link NetworkSettings#setAutoReconnect(boolean)} the client connects again after the reconnection delay,
+     * use {@link #close()} to stop it.
+     */
     public void disconnect() {
-        networkHandler.disconnect();
+        NetworkHandler handler = networkHandler;
+        if (handler != null) handler.disconnect();
     }
 
+    /**
+     * Get the handler of the current connection.
+     * A new handler is created for every connection, so the handler changes when the client reconnects.
+     *
+     * @return The handler or null if the client has never connected
+     */
+    @Nullable
     public NetworkHandler getNetworkHandler() {
         return networkHandler;
     }
+
+    /**
+     * A packet or a request sent while the connection was down.
+     */
+    private static final class Buffered {
+        private final Packet<?> packet;
+        private final CompletableFuture<Packet<?>> response;
+        private final long timeoutMillis;
+
+        private Buffered(Packet<?> packet, @Nullable CompletableFuture<Packet<?>> response, long timeoutMillis) {
+            this.packet = packet;
+            this.response = response;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        private void send(NetworkHandler handler) {
+            if (response != null) {
+                handler.<Packet<?>>request(packet, timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((r, t) -> {
+                    if (t != null) response.completeExceptionally(t);
+                    else response.complete(r);
+                });
+                return;
+            }
+
+            try {
+                handler.sendPacket(packet, false);
+            } catch (PacketSendException e) {
+                handler.getChannel().pipeline().fireExceptionCaught(e);
+            }
+        }
+    }
 }
@@ -0,0 +1,510 @@
+package it.multicoredev.mclib.network.codec;
+
+import it.multicoredev.mclib.network.PacketByteBuf;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+final class BinaryCodec<T> implements PacketCodec<T> {
+    private static final int BOOLEAN = 0;
+    private static final int BYTE = 1;
+    private static final int SHORT = 2;
+    private static final int CHAR = 3;
+    private static final int INT = 4;
+    private static final int LONG = 5;
+    private static final int FLOAT = 6;
+    private static final int DOUBLE = 7;
+    private static final int OBJECT = 8;
+
+    private static final int VALUE_NULL = 0;
+    private static final int VALUE_BINARY = 1;
+    private static final int VALUE_JSON = 2;
+
+    private final Class<T> type;
+    private final Constructor<T> constructor;
+    private final Property[] properties;
+
+    private BinaryCodec(Class<T> type, Constructor<T> constructor, Property[] properties) {
+        this.type = type;
+        this.constructor = constructor;
+        this.properties = properties;
+    }
+
+    static <T> BinaryCodec<T> compile(Class<T> type) throws IllegalArgumentException {
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            throw new IllegalArgumentException("Cannot create a binary codec for abstract type " + type.getName());
+        }
+
+        Constructor<T> constructor;
+        try {
+            constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Class " + type.getName() + " must have an empty constructor", e);
+        }
+
+        List<Property> properties = new ArrayList<>();
+        collectProperties(type, properties);
+
+        return new BinaryCodec<>(type, constructor, properties.toArray(new Property[0]));
+    }
+
+    private static void collectProperties(Class<?> type, List<Property> properties) {
+        if (type == null || type == Object.class) return;
+        collectProperties(type.getSuperclass(), properties);
+
+        List<Field> fields = new ArrayList<>();
+        for (Field field : type.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) continue;
+            fields.add(field);
+        }
+        fields.sort(Comparator.comparing(Field::getName));
+
+        for (Field field : fields) {
+            field.setAccessible(true);
+            properties.add(new Property(field));
+        }
+    }
+
+    @Override
+    public void encode(PacketByteBuf buf, T value) throws IllegalArgumentException {
+        if (value.getClass() != type) {
+            throw new IllegalArgumentException("Cannot encode " + value.getClass().getName() + " with the codec of " + type.getName());
+        }
+
+        try {
+            for (Property property : properties) {
+                property.write(buf, value);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Object " + type.getName() + " is not serializable", e);
+        }
+    }
+
+    @Override
+    public T decode(PacketByteBuf buf) throws IllegalArgumentException {
+        try {
+            T value = constructor.newInstance();
+            for (Property property : properties) {
+                property.read(buf, value);
+            }
+
+            return value;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Object " + type.getName() + " is not deserializable", e);
+        }
+    }
+
+    private static final class Property {
+        private final Field field;
+        private final int kind;
+        private final PacketCodec<Object> codec;
+
+        private Property(Field field) {
+            this.field = field;
+            Class<?> type = field.getType();
+
+            if (type == boolean.class) kind = BOOLEAN;
+            else if (type == byte.class) kind = BYTE;
+            else if (type == short.class) kind = SHORT;
+            else if (type == char.class) kind = CHAR;
+            else if (type == int.class) kind = INT;
+            else if (type == long.class) kind = LONG;
+            else if (type == float.class) kind = FLOAT;
+            else if (type == double.class) kind = DOUBLE;
+            else kind = OBJECT;
+
+            codec = kind == OBJECT ? codecOf(field.getGenericType()) : null;
+        }
+
+        private void write(PacketByteBuf buf, Object obj) throws IllegalAccessException {
+            switch (kind) {
+                case BOOLEAN:
+                    buf.writeBoolean(field.getBoolean(obj));
+                    break;
+                case BYTE:
+                    buf.writeByte(field.getByte(obj));
+                    break;
+                case SHORT:
+                    buf.writeShort(field.getShort(obj));
+                    break;
+                case CHAR:
+                    buf.writeChar(field.getChar(obj));
+                    break;
+                case INT:
+                    buf.writeInt(field.getInt(obj));
+                    break;
+                case LONG:
+                    buf.writeLong(field.getLong(obj));
+                    break;
+                case FLOAT:
+                    buf.writeFloat(field.getFloat(obj));
+                    break;
+                case DOUBLE:
+                    buf.writeDouble(field.getDouble(obj));
+                    break;
+                default:
+                    codec.encode(buf, field.get(obj));
+            }
+        }
+
+        private void read(PacketByteBuf buf, Object obj) throws IllegalAccessException {
+            switch (kind) {
+                case BOOLEAN:
+                    field.setBoolean(obj, buf.readBoolean());
+                    break;
+                case BYTE:
+                    field.setByte(obj, buf.readByte());
+                    break;
+                case SHORT:
+                    field.setShort(obj, buf.readShort());
+                    break;
+                case CHAR:
+                    field.setChar(obj, buf.readChar());
+                    break;
+                case INT:
+                    field.setInt(obj, buf.readInt());
+                    break;
+                case LONG:
+                    field.setLong(obj, buf.readLong());
+                    break;
+                case FLOAT:
+                    field.setFloat(obj, buf.readFloat());
+                    break;
+                case DOUBLE:
+                    field.setDouble(obj, buf.readDouble());
+                    break;
+                default:
+                    field.set(obj, codec.decode(buf));
+            }
+        }
+    }
+
+    /**
+     * Get the codec of a field, array component, collection element or map entry.
+     * Every codec returned is null safe and chosen from the declared type, the same on both sides. The codecs of POJOs
+     * and registered classes only encode instances of exactly that class, a subclass is written as json instead.
+     */
+    @SuppressWarnings("unchecked")
+    static PacketCodec<Object> codecOf(Type type) {
+        Class<?> raw = rawType(type);
+        return nullable((PacketCodec<Object>) valueCodecOf(type), type, raw != null && isExact(raw) ? raw : null);
+    }
+
+    /**
+     * Return true if the codec of the class can't encode its subclasses, like the POJO and the registered codecs.
+     */
+    private static boolean isExact(Class<?> type) {
+        if (PacketCodecs.get(type) != null) return true;
+        return !Collection.class.isAssignableFrom(type) && !Map.class.isAssignableFrom(type) && isPojo(type);
+    }
+
+    private static PacketCodec<?> valueCodecOf(Type type) {
+        if (type instanceof WildcardType) return valueCodecOf(((WildcardType) type).getUpperBounds()[0]);
+
+        Class<?> raw = rawType(type);
+        if (raw == null) return json(type);
+
+        PacketCodec<?> registered = PacketCodecs.get(raw);
+        if (registered != null) return registered;
+
+        if (raw == String.class) return BinaryCodec.<String>codec(PacketByteBuf::writeString, PacketByteBuf::readString);
+        if (raw == Boolean.class) return BinaryCodec.<Boolean>codec(PacketByteBuf::writeBoolean, PacketByteBuf::readBoolean);
+        if (raw == Byte.class) return BinaryCodec.<Byte>codec(PacketByteBuf::writeByte, PacketByteBuf::readByte);
+        if (raw == Short.class) return BinaryCodec.<Short>codec(PacketByteBuf::writeShort, PacketByteBuf::readShort);
+        if (raw == Character.class) return BinaryCodec.<Character>codec(PacketByteBuf::writeChar, PacketByteBuf::readChar);
+        if (raw == Integer.class) return BinaryCodec.<Integer>codec(PacketByteBuf::writeInt, PacketByteBuf::readInt);
+        if (raw == Long.class) return BinaryCodec.<Long>codec(PacketByteBuf::writeLong, PacketByteBuf::readLong);
+        if (raw == Float.class) return BinaryCodec.<Float>codec(PacketByteBuf::writeFloat, PacketByteBuf::readFloat);
+        if (raw == Double.class) return BinaryCodec.<Double>codec(PacketByteBuf::writeDouble, PacketByteBuf::readDouble);
+        if (raw == UUID.class) {
+            return BinaryCodec.<UUID>codec((buf, value) -> buf.writeLong(value.getMostSignificantBits()).writeLong(value.getLeastSignificantBits()),
+                    buf -> new UUID(buf.readLong(), buf.readLong()));
+        }
+        if (raw.isEnum()) return enumCodec(raw);
+        if (raw == byte[].class) {
+            return BinaryCodec.<byte[]>codec((buf, value) -> buf.writeVarInt(value.length).writeBytes(value), buf -> {
+                byte[] bytes = new byte[checkLength(buf, buf.readVarInt())];
+                buf.readBytes(bytes);
+                return bytes;
+            });
+        }
+        if (raw.isArray()) {
+            Type component = type instanceof GenericArrayType ? ((GenericArrayType) type).getGenericComponentType() : raw.getComponentType();
+            Class<?> componentClass = rawType(component);
+            if (componentClass != null) return arrayCodec(componentClass, codecOf(component));
+        }
+        if (Collection.class.isAssignableFrom(raw)) {
+            return collectionCodec(collectionFactory(raw), codecOf(typeArgument(type, 0)));
+        }
+        if (Map.class.isAssignableFrom(raw)) {
+            return mapCodec(mapFactory(raw), codecOf(typeArgument(type, 0)), codecOf(typeArgument(type, 1)));
+        }
+        if (isPojo(raw)) return lazy(raw);
+
+        return json(type);
+    }
+
+    private static <V> PacketCodec<V> codec(Encoder<V> encoder, Decoder<V> decoder) {
+        return new PacketCodec<V>() {
+            @Override
+            public void encode(PacketByteBuf buf, V value) {
+                encoder.encode(buf, value);
+            }
+
+            @Override
+            public V decode(PacketByteBuf buf) {
+                return decoder.decode(buf);
+            }
+        };
+    }
+
+    /**
+     * Prefix the values with a byte: null, written with the codec or, when they are not exactly of the class of
+     * an exact codec, written as json as the declared type.
+     */
+    private static PacketCodec<Object> nullable(PacketCodec<Object> codec, Type type, Class<?> exact) {
+        return codec(
+                (buf, value) -> {
+                    if (value == null) {
+                        buf.writeByte(VALUE_NULL);
+                    } else if (exact != null && value.getClass() != exact) {
+                        buf.writeByte(VALUE_JSON);
+                        buf.writeJson(value, type);
+                    } else {
+                        buf.writeByte(VALUE_BINARY);
+                        codec.encode(buf, value);
+                    }
+                },
+                buf -> {
+                    byte format = buf.readByte();
+                    switch (format) {
+                        case VALUE_NULL:
+                            return null;
+                        case VALUE_BINARY:
+                            return codec.decode(buf);
+                        case VALUE_JSON:
+                            return buf.readJson(type);
+                        default:
+                            throw new IllegalArgumentException("Unknown value format " + format);
+                    }
+                }
+        );
+    }
+
+    private static PacketCodec<Object> json(Type type) {
+        return codec((buf, value) -> buf.writeJson(value, type), buf -> buf.readJson(type));
+    }
+
+    private static PacketCodec<Object> enumCodec(Class<?> type) {
+        Object[] constants = type.getEnumConstants();
+        return codec((buf, value) -> buf.writeVarInt(((Enum<?>) value).ordinal()), buf -> {
+            int ordinal = buf.readVarInt();
+            if (ordinal < 0 || ordinal >= constants.length) {
+                throw new IllegalArgumentException("Invalid ordinal " + ordinal + " for enum " + type.getName());
+            }
+
+            return constants[ordinal];
+        });
+    }
+
+    private static PacketCodec<Object> arrayCodec(Class<?> component, PacketCodec<Object> codec) {
+        return codec((buf, value) -> {
+            int length = Array.getLength(value);
+            buf.writeVarInt(length);
+            for (int i = 0; i < length; i++) {
+                codec.encode(buf, Array.get(value, i));
+            }
+        }, buf -> {
+            int length = checkLength(buf, buf.readVarInt());
+            Object array = Array.newInstance(component, length);
+            for (int i = 0; i < length; i++) {
+                Array.set(array, i, codec.decode(buf));
+            }
+
+            return array;
+        });
+    }
+
+    private static PacketCodec<Collection<Object>> collectionCodec(Supplier<Collection<Object>> factory, PacketCodec<Object> codec) {
+        return codec((buf, value) -> {
+            buf.writeVarInt(value.size());
+            for (Object element : value) {
+                codec.encode(buf, element);
+            }
+        }, buf -> {
+            int size = checkLength(buf, buf.readVarInt());
+            Collection<Object> collection = factory.get();
+            for (int i = 0; i < size; i++) {
+                collection.add(codec.decode(buf));
+            }
+
+            return collection;
+        });
+    }
+
+    private static PacketCodec<Map<Object, Object>> mapCodec(Supplier<Map<Object, Object>> factory, PacketCodec<Object> keyCodec, PacketCodec<Object> valueCodec) {
+        return codec((buf, value) -> {
+            buf.writeVarInt(value.size());
+            for (Map.Entry<Object, Object> entry : value.entrySet()) {
+                keyCodec.encode(buf, entry.getKey());
+                valueCodec.encode(buf, entry.getValue());
+            }
+        }, buf -> {
+            int size = checkLength(buf, buf.readVarInt());
+            Map<Object, Object> map = factory.get();
+            for (int i = 0; i < size; i++) {
+                map.put(keyCodec.decode(buf), valueCodec.decode(buf));
+            }
+
+            return map;
+        });
+    }
+
+    private static PacketCodec<Object> lazy(Class<?> type) {
+        return new PacketCodec<Object>() {
+            private PacketCodec<Object> codec;
+
+            @Override
+            public void encode(PacketByteBuf buf, Object value) {
+                codec().encode(buf, value);
+            }
+
+            @Override
+            public Object decode(PacketByteBuf buf) {
+                return codec().decode(buf);
+            }
+
+            @SuppressWarnings("unchecked")
+            private PacketCodec<Object> codec() {
+                if (codec == null) codec = (PacketCodec<Object>) PacketCodecs.binary(type);
+                return codec;
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Supplier<Collection<Object>> collectionFactory(Class<?> type) {
+        if (!type.isInterface() && !Modifier.isAbstract(type.getModifiers())) return (Supplier<Collection<Object>>) instantiator(type);
+        if (SortedSet.class.isAssignableFrom(type)) return TreeSet::new;
+        if (Set.class.isAssignableFrom(type)) return HashSet::new;
+        if (Queue.class.isAssignableFrom(type)) return type.isAssignableFrom(ArrayDeque.class) ? ArrayDeque::new : LinkedList::new;
+        return ArrayList::new;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Supplier<Map<Object, Object>> mapFactory(Class<?> type) {
+        if (!type.isInterface() && !Modifier.isAbstract(type.getModifiers())) return (Supplier<Map<Object, Object>>) instantiator(type);
+        if (SortedMap.class.isAssignableFrom(type)) return TreeMap::new;
+        return HashMap::new;
+    }
+
+    private static Supplier<?> instantiator(Class<?> type) {
+        Constructor<?> constructor;
+        try {
+            constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Class " + type.getName() + " must have an empty constructor", e);
+        }
+
+        return () -> {
+            try {
+                return constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("Cannot create " + type.getName(), e);
+            }
+        };
+    }
+
+    private static boolean isPojo(Class<?> type) {
+        if (type.isInterface() || type.isPrimitive() || Modifier.isAbstract(type.getModifiers())) return false;
+        if (type.getName().startsWith("java.") || type.getName().startsWith("javax.")) return false;
+
+        try {
+            type.getDeclaredConstructor();
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static Class<?> rawType(Type type) {
+        if (type instanceof Class) return (Class<?>) type;
+        if (type instanceof ParameterizedType) return rawType(((ParameterizedType) type).getRawType());
+        if (type instanceof GenericArrayType) {
+            Class<?> component = rawType(((GenericArrayType) type).getGenericComponentType());
+            return component != null ? Array.newInstance(component, 0).getClass() : null;
+        }
+        if (type instanceof WildcardType) return rawType(((WildcardType) type).getUpperBounds()[0]);
+
+        return null;
+    }
+
+    private static Type typeArgument(Type type, int index) {
+        if (type instanceof ParameterizedType) return ((ParameterizedType) type).getActualTypeArguments()[index];
+        return Object.class;
+    }
+
+    private static int checkLength(PacketByteBuf buf, int length) {
+        if (length < 0 || length > buf.readableBytes()) {
+            throw new IllegalArgumentException("Invalid length " + length + ", " + buf.readableBytes() + " bytes readable");
+        }
+
+        return length;
+    }
+
+    @FunctionalInterface
+    private interface Encoder<V> {
+        void encode(PacketByteBuf buf, V value);
+    }
+
+    @FunctionalInterface
+    private interface Decoder<V> {
+        V decode(PacketByteBuf buf);
+    }
+}
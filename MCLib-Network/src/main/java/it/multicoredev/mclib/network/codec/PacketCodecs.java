@@ -0,0 +1,104 @@
+package it.multicoredev.mclib.network.codec;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public final class PacketCodecs {
+    private static final Map<Class<?>, PacketCodec<?>> codecs = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, PacketCodec<?>> compiled = new ConcurrentHashMap<>();
+
+    private PacketCodecs() {
+    }
+
+    /**
+     * Register the codec used by {@link it.multicoredev.mclib.network.PacketByteBuf#writeObject(Object, java.lang.reflect.Type)} and
+     * {@link it.multicoredev.mclib.network.PacketByteBuf#readObject(java.lang.reflect.Type)} for a class.
+     * Classes without a registered codec are serialized as json with Gson.
+     *
+     * @param type  The class
+     * @param codec The codec of the class
+     * @param <T>   The type of the class
+     */
+    public static <T> void register(@NotNull Class<T> type, @NotNull PacketCodec<T> codec) {
+        codecs.put(type, codec);
+    }
+
+    /**
+     * Register the binary codec generated by {@link #binary(Class)} for a class.
+     *
+     * @param type The class
+     * @param <T>  The type of the class
+     * @throws IllegalArgumentException If the class has no empty constructor
+     */
+    public static <T> void registerBinary(@NotNull Class<T> type) throws IllegalArgumentException {
+        register(type, binary(type));
+    }
+
+    /**
+     * Unregister the codec of a class.
+     *
+     * @param type The class
+     */
+    public static void unregister(@NotNull Class<?> type) {
+        codecs.remove(type);
+    }
+
+    /**
+     * Get the codec registered for a class.
+     *
+     * @param type The class
+     * @param <T>  The type of the class
+     * @return The codec or null if no codec is registered for the class
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public static <T> PacketCodec<T> get(@NotNull Class<T> type) {
+        return (PacketCodec<T>) codecs.get(type);
+    }
+
+    /**
+     * Get the binary codec of a POJO.
+     * The codec is compiled once with reflection: non static and non transient fields are written in a fixed order
+     * (superclass fields first, then by name), primitives are written raw, strings, enums, UUIDs, arrays, collections,
+     * maps and nested objects are supported and any other type falls back to json.
+     *
+     * @param type The class of the POJO
+     * @param <T>  The type of the class
+     * @return The binary codec of the class
+     * @throws IllegalArgumentException If the class has no empty constructor
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PacketCodec<T> binary(@NotNull Class<T> type) throws IllegalArgumentException {
+        PacketCodec<?> codec = compiled.get(type);
+        if (codec == null) {
+            codec = BinaryCodec.compile(type);
+            PacketCodec<?> previous = compiled.putIfAbsent(type, codec);
+            if (previous != null) codec = previous;
+        }
+
+        return (PacketCodec<T>) codec;
+    }
+}
@@ -0,0 +1,240 @@
+package it.multicoredev.mclib.network.datagram;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.util.concurrent.ScheduledFuture;
+import it.multicoredev.mclib.network.Futures;
+import it.multicoredev.mclib.network.Transport;
+import it.multicoredev.mclib.network.protocol.PacketListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class DatagramEndpoint {
+    /**
+     * The datagram carries a sequence number (int) after the registry fingerprint.
+     */
+    public static final int FLAG_SEQUENCED = 0x01;
+    /**
+     * The size of the header always present: the flags (byte) and the fingerprint of the packet registry (long).
+     */
+    static final int HEADER_SIZE = 9;
+
+    private final int port;
+    private final Function<DatagramSession, PacketListener> listenerFactory;
+    private final DatagramSettings settings;
+    private final Map<InetSocketAddress, DatagramSession> sessions = new ConcurrentHashMap<>();
+    private final LongAdder droppedDatagrams = new LongAdder();
+    private final LongAdder droppedPackets = new LongAdder();
+    private Channel channel;
+    private ScheduledFuture<?> expiryTask;
+
+    /**
+     * Create a UDP endpoint.
+     * The same class is used by servers and clients: a server binds a known port and accepts the sessions of new peers,
+     * a client binds port 0 and opens a session with {@link #connect(InetSocketAddress, PacketListener)}.
+     *
+     * @param port            The port to bind, 0 for an ephemeral port
+     * @param listenerFactory The factory of the listener of the sessions opened by new peers or null to ignore the datagrams
+     *                        of unknown peers
+     * @param settings        The settings of the endpoint
+     */
+    public DatagramEndpoint(int port, @Nullable Function<DatagramSession, PacketListener> listenerFactory, DatagramSettings settings) {
+        this.port = port;
+        this.listenerFactory = listenerFactory;
+        this.settings = settings;
+    }
+
+    public DatagramEndpoint(int port, @Nullable Function<DatagramSession, PacketListener> listenerFactory) {
+        this(port, listenerFactory, new DatagramSettings());
+    }
+
+    public DatagramSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Bind the endpoint without blocking the calling thread.
+     *
+     * @return A future completed when the endpoint is bound or completed exceptionally if the port cannot be bound
+     * @throws IllegalStateException If the endpoint has already been started
+     */
+    public synchronized CompletableFuture<Void> start() {
+        if (channel != null) throw new IllegalStateException("Endpoint already started");
+
+        Transport transport = settings.getTransport();
+        EventLoopGroup group = settings.getEventLoopGroup() != null ? settings.getEventLoopGroup() : transport.getSharedEventLoopGroup();
+
+        Bootstrap bootstrap = new Bootstrap();
+        bootstrap.group(group);
+        bootstrap.channel(transport.getDatagramChannelClass());
+        bootstrap.option(ChannelOption.ALLOCATOR, settings.getAllocator());
+        bootstrap.option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(settings.getMaxDatagramSize()));
+        bootstrap.handler(new DatagramHandler(this));
+
+        ChannelFuture future = bootstrap.bind(port);
+        channel = future.channel();
+
+        long timeout = settings.getSessionTimeoutMillis();
+        if (timeout > 0) {
+            long period = Math.min(timeout, 1000);
+            expiryTask = channel.eventLoop().scheduleAtFixedRate(() -> expireSessions(timeout), period, period, TimeUnit.MILLISECONDS);
+        }
+
+        return Futures.toCompletable(future);
+    }
+
+    /**
+     * Close all the sessions and unbind the endpoint.
+     *
+     * @return A future completed when the channel is closed
+     */
+    public synchronized CompletableFuture<Void> stop() {
+        if (channel == null) return CompletableFuture.completedFuture(null);
+
+        if (expiryTask != null) expiryTask.cancel(false);
+        for (DatagramSession session : sessions.values()) {
+            session.close();
+        }
+
+        CompletableFuture<Void> future = Futures.toCompletable(channel.close());
+        channel = null;
+        return future;
+    }
+
+    /**
+     * Open a session with a peer.
+     * UDP has no connection: the session only keeps the state of the peer (batching and sequence numbers) and
+     * the first datagram is sent when a packet is sent.
+     *
+     * @param remote   The address of the peer
+     * @param listener The listener of the packets received from the peer
+     * @return The session
+     * @throws IllegalStateException If the endpoint has not been started or a session with the peer is already open
+     */
+    public DatagramSession connect(@NotNull InetSocketAddress remote, @NotNull PacketListener listener) {
+        Channel channel = this.channel;
+        if (channel == null) throw new IllegalStateException("Endpoint not started");
+
+        DatagramSession session = new DatagramSession(this, channel, remote);
+        session.setListener(listener);
+        if (sessions.putIfAbsent(remote, session) != null) throw new IllegalStateException("Session with " + remote + " already open");
+
+        return session;
+    }
+
+    @Nullable
+    public DatagramSession getSession(InetSocketAddress remote) {
+        return sessions.get(remote);
+    }
+
+    public Collection<DatagramSession> getSessions() {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+
+    /**
+     * Get the address the endpoint is bound to.
+     *
+     * @return The local address or null if the endpoint has not been started
+     */
+    @Nullable
+    public SocketAddress getLocalAddress() {
+        Channel channel = this.channel;
+        return channel != null ? channel.localAddress() : null;
+    }
+
+    /**
+     * Get the number of datagrams dropped because they were shorter than the header or encoded with a different
+     * packet registry.
+     *
+     * @return The dropped datagrams
+     */
+    public long getDroppedDatagrams() {
+        return droppedDatagrams.sum();
+    }
+
+    /**
+     * Get the number of packets dropped because they were not registered or could not be decoded.
+     *
+     * @return The dropped packets
+     */
+    public long getDroppedPackets() {
+        return droppedPackets.sum();
+    }
+
+    /**
+     * Hand a datagram to the session of its sender, opening it if needed.
+     * Datagrams encoded with a different packet registry are dropped before a session is opened:
+     * there's no handshake over UDP, so the fingerprint in the header is the only guard against misdecoded packets.
+     * Anyone can send a datagram to the port, so invalid datagrams are only counted.
+     */
+    void receive(Channel channel, InetSocketAddress sender, ByteBuf content) throws Exception {
+        if (content.readableBytes() < HEADER_SIZE || content.getLong(content.readerIndex() + 1) != settings.getPacketRegistry().getFingerprint()) {
+            droppedDatagrams.increment();
+            return;
+        }
+
+        DatagramSession session = sessions.get(sender);
+        if (session == null) {
+            if (listenerFactory == null) return;
+
+            session = sessions.computeIfAbsent(sender, remote -> {
+                DatagramSession created = new DatagramSession(this, channel, remote);
+                created.setListener(listenerFactory.apply(created));
+                return created;
+            });
+        }
+
+        session.receive(content);
+    }
+
+    void droppedPacket() {
+        droppedPackets.increment();
+    }
+
+    void remove(DatagramSession session) {
+        sessions.remove(session.getRemoteAddress(), session);
+    }
+
+    private void expireSessions(long timeoutMillis) {
+        long now = System.nanoTime();
+        for (DatagramSession session : sessions.values()) {
+            if (now - session.getLastActivity() > TimeUnit.MILLISECONDS.toNanos(timeoutMillis)) session.close();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package it.multicoredev.mclib.network.datagram;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.socket.DatagramPacket;
+import it.multicoredev.mclib.network.PacketByteBuf;
+import it.multicoredev.mclib.network.exceptions.PacketSendException;
+import it.multicoredev.mclib.network.protocol.Packet;
+import it.multicoredev.mclib.network.protocol.PacketListener;
+import it.multicoredev.mclib.network.protocol.PacketRegistry;
+import it.multicoredev.mclib.network.protocol.RecyclablePacket;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.InetSocketAddress;
+import java.util.function.Supplier;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class DatagramSession {
+    private static final int LENGTH_SIZE = 2;
+
+    private final DatagramEndpoint endpoint;
+    private final Channel channel;
+    private final InetSocketAddress remote;
+    private final PacketRegistry registry;
+    private final int maxDatagramSize;
+    private final boolean sequenced;
+    private final int headerSize;
+    private PacketListener listener;
+    private ByteBuf batch;
+    private int batchPackets;
+    private int nextSequence;
+    private int lastSequence;
+    private boolean hasSequence;
+    private boolean closed;
+    private volatile long lastActivity = System.nanoTime();
+
+    DatagramSession(DatagramEndpoint endpoint, Channel channel, InetSocketAddress remote) {
+        this.endpoint = endpoint;
+        this.channel = channel;
+        this.remote = remote;
+        this.registry = endpoint.getSettings().getPacketRegistry();
+        this.maxDatagramSize = endpoint.getSettings().getMaxDatagramSize();
+        this.sequenced = endpoint.getSettings().isSequenced();
+        this.headerSize = sequenced ? DatagramEndpoint.HEADER_SIZE + 4 : DatagramEndpoint.HEADER_SIZE;
+    }
+
+    void setListener(PacketListener listener) {
+        this.listener = listener;
+    }
+
+    public PacketListener getListener() {
+        return listener;
+    }
+
+    public InetSocketAddress getRemoteAddress() {
+        return remote;
+    }
+
+    long getLastActivity() {
+        return lastActivity;
+    }
+
+    public void sendPacket(@NotNull Packet<?> packet) throws PacketSendException {
+        sendPacket(packet, true);
+    }
+
+    /**
+     * Send a packet optionally without flushing it.
+     * Packets written without flushing are batched in the same datagram until it's full or {@link #flush()} is called,
+     * so many small packets cost a single datagram. A packet is never split between datagrams.
+     *
+     * @param packet The packet to send
+     * @param flush  True to send the datagram immediately, False to keep batching
+     * @throws PacketSendException If the packet cannot be encoded, it doesn't fit in a datagram or the session is closed
+     */
+    public synchronized void sendPacket(@NotNull Packet<?> packet, boolean flush) throws PacketSendException {
+        if (closed) throw new PacketSendException("Session closed");
+
+        Integer id = registry.getPacketId(packet);
+        if (id == null) throw new PacketSendException("Unregistered packet.");
+
+        if (batch == null) batch = newBatch();
+        int start = batch.writerIndex();
+
+        try {
+            batch.writeShort(0);
+            PacketByteBuf buf = new PacketByteBuf(batch);
+            buf.writeVarInt(id);
+            packet.encode(buf);
+        } catch (Exception e) {
+            batch.writerIndex(start);
+            throw new PacketSendException("Error while encoding packet", e);
+        }
+
+        int size = batch.writerIndex() - start;
+        if (headerSize + size > maxDatagramSize) {
+            batch.writerIndex(start);
+            throw new PacketSendException("Packet " + packet.getClass().getSimpleName() + " is too large for a datagram: " + size + " bytes");
+        }
+        batch.setShort(start, size - LENGTH_SIZE);
+
+        if (batch.writerIndex() > maxDatagramSize) {
+            ByteBuf next = newBatch();
+            next.writeBytes(batch, start, size);
+            batch.writerIndex(start);
+            writeBatch();
+            batch = next;
+        }
+
+        batchPackets++;
+        if (flush) flush();
+    }
+
+    /**
+     * Send the packets batched with {@link #sendPacket(Packet, boolean)}.
+     */
+    public synchronized void flush() {
+        if (batch != null && batchPackets > 0) writeBatch();
+    }
+
+    /**
+     * Close the session and discard the batched packets.
+     * A new session is opened if the peer sends another datagram and the endpoint accepts new peers.
+     */
+    public synchronized void close() {
+        if (closed) return;
+
+        closed = true;
+        if (batch != null) {
+            batch.release();
+            batch = null;
+        }
+        endpoint.remove(this);
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private ByteBuf newBatch() {
+        ByteBuf buf = channel.alloc().ioBuffer(maxDatagramSize);
+        buf.writeByte(sequenced ? DatagramEndpoint.FLAG_SEQUENCED : 0);
+        buf.writeLong(registry.getFingerprint());
+        if (sequenced) buf.writeInt(0);
+        return buf;
+    }
+
+    private void writeBatch() {
+        if (sequenced) batch.setInt(DatagramEndpoint.HEADER_SIZE, nextSequence++);
+
+        channel.writeAndFlush(new DatagramPacket(batch, remote), channel.voidPromise());
+        batch = null;
+        batchPackets = 0;
+        lastActivity = System.nanoTime();
+    }
+
+    /**
+     * Decode and process the packets of a datagram on the event loop.
+     * The fingerprint of the registry in the header has already been checked by the endpoint.
+     * With sequence numbers, a datagram older than the last one received is dropped. The comparison is done on the
+     * difference of the numbers, so it keeps working when the sequence wraps around.
+     * A packet that cannot be decoded is dropped and counted by the endpoint, the following packets are still processed
+     * since every packet is prefixed by its length. A length past the end of the datagram drops the rest of it.
+     */
+    @SuppressWarnings("unchecked")
+    void receive(ByteBuf content) throws Exception {
+        lastActivity = System.nanoTime();
+        byte flags = content.readByte();
+        content.skipBytes(Long.BYTES);
+        if ((flags & DatagramEndpoint.FLAG_SEQUENCED) != 0) {
+            if (content.readableBytes() < Integer.BYTES) {
+                endpoint.droppedPacket();
+                return;
+            }
+
+            int sequence = content.readInt();
+            if (hasSequence && sequence - lastSequence <= 0) return;
+
+            lastSequence = sequence;
+            hasSequence = true;
+        }
+
+        while (content.isReadable()) {
+            int length = content.readableBytes() >= Short.BYTES ? content.readUnsignedShort() : Integer.MAX_VALUE;
+            if (length > content.readableBytes()) {
+                endpoint.droppedPacket();
+                return;
+            }
+
+            Packet<?> packet = decode(content.readSlice(length));
+            if (packet == null) {
+                endpoint.droppedPacket();
+                continue;
+            }
+
+            try {
+                ((Packet<PacketListener>) packet).processPacket(listener);
+            } finally {
+                if (packet instanceof RecyclablePacket) ((RecyclablePacket<?>) packet).recycle();
+            }
+        }
+    }
+
+    /**
+     * Decode a single packet of a datagram.
+     *
+     * @return The packet or null if the packet is not registered or malformed
+     */
+    @Nullable
+    private Packet<?> decode(ByteBuf content) {
+        Packet<?> packet = null;
+        try {
+            PacketByteBuf buf = new PacketByteBuf(content);
+            Supplier<? extends Packet<?>> factory = registry.getPacketFactory(buf.readVarInt());
+            if (factory == null) return null;
+
+            packet = factory.get();
+            packet.decode(buf);
+            if (!buf.isReadable()) return packet;
+        } catch (Exception ignored) {
+        }
+
+        if (packet instanceof RecyclablePacket) ((RecyclablePacket<?>) packet).recycle();
+        return null;
+    }
+}
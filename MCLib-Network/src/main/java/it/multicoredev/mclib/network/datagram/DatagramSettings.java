@@ -0,0 +1,157 @@
+package it.multicoredev.mclib.network.datagram;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.EventLoopGroup;
+import it.multicoredev.mclib.network.Transport;
+import it.multicoredev.mclib.network.protocol.PacketRegistry;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class DatagramSettings {
+    private Transport transport;
+    private EventLoopGroup eventLoopGroup;
+    private ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+    private PacketRegistry packetRegistry = PacketRegistry.getInstance();
+    private int maxDatagramSize = 1400;
+    private boolean sequenced = false;
+    private long sessionTimeoutMillis = 30000;
+
+    public DatagramSettings() {
+    }
+
+    /**
+     * Get the transport of the endpoint.
+     * If not set the best transport available is used (see {@link Transport#best()}).
+     *
+     * @return The transport
+     */
+    public Transport getTransport() {
+        return transport != null ? transport : Transport.best();
+    }
+
+    public DatagramSettings setTransport(Transport transport) {
+        if (transport != null && !transport.isAvailable()) throw new IllegalArgumentException("Transport " + transport + " is not available");
+        this.transport = transport;
+        return this;
+    }
+
+    @Nullable
+    public EventLoopGroup getEventLoopGroup() {
+        return eventLoopGroup;
+    }
+
+    /**
+     * Set the event loop group of the endpoint.
+     * If not set the group shared by the transport is used (see {@link Transport#getSharedEventLoopGroup()}).
+     * The group is not shut down when the endpoint is stopped.
+     *
+     * @param eventLoopGroup The event loop group
+     * @return The DatagramSettings
+     */
+    public DatagramSettings setEventLoopGroup(@Nullable EventLoopGroup eventLoopGroup) {
+        this.eventLoopGroup = eventLoopGroup;
+        return this;
+    }
+
+    public ByteBufAllocator getAllocator() {
+        return allocator;
+    }
+
+    public DatagramSettings setAllocator(ByteBufAllocator allocator) {
+        if (allocator == null) throw new IllegalArgumentException("allocator cannot be null");
+        this.allocator = allocator;
+        return this;
+    }
+
+    public PacketRegistry getPacketRegistry() {
+        return packetRegistry;
+    }
+
+    /**
+     * Set the registry of the packets sent and received by the sessions.
+     * Every datagram carries the fingerprint of the registry (see {@link PacketRegistry#getFingerprint()}) and the
+     * datagrams of peers with a different registry are rejected, so both the peers must register the same packets.
+     *
+     * @param packetRegistry The registry, {@link PacketRegistry#getInstance()} by default
+     * @return The DatagramSettings
+     */
+    public DatagramSettings setPacketRegistry(PacketRegistry packetRegistry) {
+        if (packetRegistry == null) throw new IllegalArgumentException("packetRegistry cannot be null");
+        this.packetRegistry = packetRegistry;
+        return this;
+    }
+
+    public int getMaxDatagramSize() {
+        return maxDatagramSize;
+    }
+
+    /**
+     * Set the maximum size of a datagram.
+     * Small packets are batched in a single datagram up to this size. The default of 1400 bytes fits an Ethernet MTU
+     * with the IP and UDP headers, so the datagrams are never fragmented. Both the peers must use the same size.
+     *
+     * @param maxDatagramSize The maximum size of a datagram in bytes, between 64 and 65507
+     * @return The DatagramSettings
+     */
+    public DatagramSettings setMaxDatagramSize(int maxDatagramSize) {
+        if (maxDatagramSize < 64 || maxDatagramSize > 65507) throw new IllegalArgumentException("maxDatagramSize must be between 64 and 65507");
+        this.maxDatagramSize = maxDatagramSize;
+        return this;
+    }
+
+    public boolean isSequenced() {
+        return sequenced;
+    }
+
+    /**
+     * Set if the datagrams carry a sequence number.
+     * The receiver drops the datagrams older than the last one received from the same peer, so stale updates
+     * (e.g. positions) that arrive out of order are never processed.
+     *
+     * @param sequenced True to number the datagrams, False otherwise
+     * @return The DatagramSettings
+     */
+    public DatagramSettings setSequenced(boolean sequenced) {
+        this.sequenced = sequenced;
+        return this;
+    }
+
+    public long getSessionTimeoutMillis() {
+        return sessionTimeoutMillis;
+    }
+
+    /**
+     * Set the time after which a session that has not sent or received any datagram is removed.
+     *
+     * @param timeout The timeout, 0 to never remove the sessions
+     * @param unit    The unit of the timeout
+     * @return The DatagramSettings
+     */
+    public DatagramSettings setSessionTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) throw new IllegalArgumentException("timeout cannot be negative");
+        this.sessionTimeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+}
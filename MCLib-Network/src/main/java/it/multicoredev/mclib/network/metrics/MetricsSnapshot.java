@@ -0,0 +1,161 @@
+package it.multicoredev.mclib.network.metrics;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public final class MetricsSnapshot {
+    private final long timestamp;
+    private final long connections;
+    private final long packetsRead;
+    private final long packetsWritten;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long roundTripTime;
+    private final HistogramSnapshot roundTripTimes;
+    private final long pendingPackets;
+    private final long pendingWriteBytes;
+    private final Map<Integer, PacketSnapshot> packets;
+
+    MetricsSnapshot(long timestamp, long connections, long packetsRead, long packetsWritten, long bytesRead, long bytesWritten, long roundTripTime, HistogramSnapshot roundTripTimes, long pendingPackets, long pendingWriteBytes, Map<Integer, PacketSnapshot> packets) {
+        this.timestamp = timestamp;
+        this.connections = connections;
+        this.packetsRead = packetsRead;
+        this.packetsWritten = packetsWritten;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.roundTripTime = roundTripTime;
+        this.roundTripTimes = roundTripTimes;
+        this.pendingPackets = pendingPackets;
+        this.pendingWriteBytes = pendingWriteBytes;
+        this.packets = Collections.unmodifiableMap(packets);
+    }
+
+    /**
+     * Get the time the snapshot was taken at, from {@link System#nanoTime()}.
+     *
+     * @return The timestamp in nanoseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getConnections() {
+        return connections;
+    }
+
+    public long getPacketsRead() {
+        return packetsRead;
+    }
+
+    public long getPacketsWritten() {
+        return packetsWritten;
+    }
+
+    /**
+     * Get the bytes read from the socket, compressed frames included.
+     *
+     * @return The read bytes
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Get the bytes written to the socket, compressed frames included.
+     *
+     * @return The written bytes
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Get the last round trip time measured by a keepalive ping.
+     *
+     * @return The round trip time in nanoseconds or -1 if no ping has been answered yet
+     */
+    public long getRoundTripTime() {
+        return roundTripTime;
+    }
+
+    /**
+     * Get the distribution of the round trip times of all the connections.
+     *
+     * @return The round trip times in nanoseconds or null for the metrics of a single connection
+     */
+    @Nullable
+    public HistogramSnapshot getRoundTripTimes() {
+        return roundTripTimes;
+    }
+
+    /**
+     * Get the received packets waiting to be processed by the dispatch executor when the snapshot was taken.
+     *
+     * @return The pending packets, summed over the open connections for the global metrics
+     */
+    public long getPendingPackets() {
+        return pendingPackets;
+    }
+
+    /**
+     * Get the bytes waiting to be written to the socket when the snapshot was taken.
+     *
+     * @return The pending bytes, summed over the open connections for the global metrics
+     */
+    public long getPendingWriteBytes() {
+        return pendingWriteBytes;
+    }
+
+    /**
+     * Get the metrics of every packet id seen.
+     *
+     * @return The metrics by packet id
+     */
+    public Map<Integer, PacketSnapshot> getPackets() {
+        return packets;
+    }
+
+    public double getPacketsReadPerSecond(MetricsSnapshot previous) {
+        return rate(previous.packetsRead, packetsRead, previous);
+    }
+
+    public double getPacketsWrittenPerSecond(MetricsSnapshot previous) {
+        return rate(previous.packetsWritten, packetsWritten, previous);
+    }
+
+    public double getBytesReadPerSecond(MetricsSnapshot previous) {
+        return rate(previous.bytesRead, bytesRead, previous);
+    }
+
+    public double getBytesWrittenPerSecond(MetricsSnapshot previous) {
+        return rate(previous.bytesWritten, bytesWritten, previous);
+    }
+
+    private double rate(long from, long to, MetricsSnapshot previous) {
+        long elapsed = timestamp - previous.timestamp;
+        return elapsed > 0 ? (to - from) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed : 0;
+    }
+}
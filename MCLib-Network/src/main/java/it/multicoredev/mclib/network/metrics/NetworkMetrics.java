@@ -0,0 +1,266 @@
+package it.multicoredev.mclib.network.metrics;
+
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class NetworkMetrics {
+    private final NetworkMetrics parent;
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder packetsRead = new LongAdder();
+    private final LongAdder packetsWritten = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LatencyHistogram roundTripTimes;
+    private volatile long roundTripTime = -1;
+    private volatile IntObjectMap<PacketCounters> packets = new IntObjectHashMap<>();
+    private final Set<NetworkMetrics> openConnections;
+    private volatile LongSupplier pendingPackets;
+    private volatile LongSupplier pendingWriteBytes;
+
+    /**
+     * Create the global metrics of a server or a client.
+     * Set them with {@link it.multicoredev.mclib.network.NetworkSettings#setMetrics(NetworkMetrics)}, every connection
+     * records its metrics in a child created with {@link #newConnectionMetrics()} and in these.
+     */
+    public NetworkMetrics() {
+        this(null);
+    }
+
+    private NetworkMetrics(NetworkMetrics parent) {
+        this.parent = parent;
+        this.roundTripTimes = parent == null ? new LatencyHistogram() : null;
+        this.openConnections = parent == null ? ConcurrentHashMap.newKeySet() : null;
+    }
+
+    /**
+     * Create the metrics of a single connection.
+     * The values recorded in the connection metrics are recorded in these too. The latency histograms are kept only
+     * in the global metrics to keep the connections cheap.
+     *
+     * @return The metrics of the connection
+     */
+    public NetworkMetrics newConnectionMetrics() {
+        return new NetworkMetrics(this);
+    }
+
+    @Nullable
+    public NetworkMetrics getParent() {
+        return parent;
+    }
+
+    public void connectionOpened() {
+        connections.increment();
+        if (parent != null) {
+            parent.openConnections.add(this);
+            parent.connectionOpened();
+        }
+    }
+
+    public void connectionClosed() {
+        connections.decrement();
+        if (parent != null) {
+            parent.openConnections.remove(this);
+            parent.connectionClosed();
+        }
+    }
+
+    /**
+     * Set the gauges of the queues of a connection.
+     * The gauges are read when a snapshot is taken, the global metrics report the sum of the open connections.
+     *
+     * @param pendingPackets    The number of received packets waiting to be processed
+     * @param pendingWriteBytes The number of bytes waiting to be written to the socket
+     */
+    public void setQueueGauges(@NotNull LongSupplier pendingPackets, @NotNull LongSupplier pendingWriteBytes) {
+        if (parent == null) throw new IllegalStateException("Queue gauges can be set only on the metrics of a connection");
+        if (pendingPackets == null) throw new IllegalArgumentException("Pending packets gauge cannot be null");
+        if (pendingWriteBytes == null) throw new IllegalArgumentException("Pending write bytes gauge cannot be null");
+
+        this.pendingPackets = pendingPackets;
+        this.pendingWriteBytes = pendingWriteBytes;
+    }
+
+    /**
+     * Record the bytes read from the socket.
+     *
+     * @param bytes The number of bytes
+     */
+    public void recordBytesRead(long bytes) {
+        bytesRead.add(bytes);
+        if (parent != null) parent.recordBytesRead(bytes);
+    }
+
+    /**
+     * Record the bytes written to the socket.
+     *
+     * @param bytes The number of bytes
+     */
+    public void recordBytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+        if (parent != null) parent.recordBytesWritten(bytes);
+    }
+
+    /**
+     * Record a decoded packet.
+     *
+     * @param id          The id of the packet
+     * @param frameBytes  The size of the uncompressed frame
+     * @param decodeNanos The time spent decoding the packet
+     */
+    public void recordPacketRead(int id, int frameBytes, long decodeNanos) {
+        packetsRead.increment();
+
+        PacketCounters counters = counters(id);
+        counters.packetsRead.increment();
+        counters.bytesRead.add(frameBytes);
+        if (counters.decodeTime != null) counters.decodeTime.record(decodeNanos);
+
+        if (parent != null) parent.recordPacketRead(id, frameBytes, decodeNanos);
+    }
+
+    /**
+     * Record a sent packet.
+     *
+     * @param id          The id of the packet
+     * @param frameBytes  The size of the uncompressed frame
+     * @param encodeNanos The time spent encoding the packet, -1 if the packet has not been encoded for this connection
+     *                    (e.g. a broadcast frame encoded once)
+     */
+    public void recordPacketWritten(int id, int frameBytes, long encodeNanos) {
+        packetsWritten.increment();
+
+        PacketCounters counters = counters(id);
+        counters.packetsWritten.increment();
+        counters.bytesWritten.add(frameBytes);
+        if (counters.encodeTime != null) counters.encodeTime.record(encodeNanos);
+
+        if (parent != null) parent.recordPacketWritten(id, frameBytes, encodeNanos);
+    }
+
+    /**
+     * Record the time spent encoding a packet without counting it as sent.
+     *
+     * @param id          The id of the packet
+     * @param encodeNanos The time spent encoding the packet
+     */
+    public void recordEncodeTime(int id, long encodeNanos) {
+        if (parent != null) {
+            parent.recordEncodeTime(id, encodeNanos);
+            return;
+        }
+
+        counters(id).encodeTime.record(encodeNanos);
+    }
+
+    /**
+     * Record the round trip time measured by a keepalive ping.
+     *
+     * @param rttNanos The round trip time in nanoseconds
+     */
+    public void recordRoundTripTime(long rttNanos) {
+        roundTripTime = rttNanos;
+        if (roundTripTimes != null) roundTripTimes.record(rttNanos);
+
+        if (parent != null) parent.recordRoundTripTime(rttNanos);
+    }
+
+    /**
+     * Get a snapshot of the metrics.
+     *
+     * @return The snapshot of the metrics
+     */
+    public MetricsSnapshot snapshot() {
+        IntObjectMap<PacketCounters> packets = this.packets;
+        Map<Integer, PacketSnapshot> snapshots = new HashMap<>();
+        for (PacketCounters counters : packets.values()) {
+            snapshots.put(counters.id, counters.snapshot());
+        }
+
+        long pendingPackets = 0;
+        long pendingWriteBytes = 0;
+        if (parent == null) {
+            for (NetworkMetrics connection : openConnections) {
+                pendingPackets += connection.pendingPackets();
+                pendingWriteBytes += connection.pendingWriteBytes();
+            }
+        } else {
+            pendingPackets = pendingPackets();
+            pendingWriteBytes = pendingWriteBytes();
+        }
+
+        return new MetricsSnapshot(
+                System.nanoTime(),
+                connections.sum(),
+                packetsRead.sum(),
+                packetsWritten.sum(),
+                bytesRead.sum(),
+                bytesWritten.sum(),
+                roundTripTime,
+                roundTripTimes != null ? roundTripTimes.snapshot() : null,
+                pendingPackets,
+                pendingWriteBytes,
+                snapshots
+        );
+    }
+
+    private long pendingPackets() {
+        LongSupplier gauge = pendingPackets;
+        return gauge != null ? gauge.getAsLong() : 0;
+    }
+
+    private long pendingWriteBytes() {
+        LongSupplier gauge = pendingWriteBytes;
+        return gauge != null ? gauge.getAsLong() : 0;
+    }
+
+    /**
+     * Get the counters of a packet.
+     * The table is copied on write: a new packet id is seen only a few times in the life of the application,
+     * so the lookups of the hot path are lock free and don't allocate.
+     */
+    private PacketCounters counters(int id) {
+        PacketCounters counters = packets.get(id);
+        if (counters != null) return counters;
+
+        synchronized (this) {
+            counters = packets.get(id);
+            if (counters != null) return counters;
+
+            IntObjectMap<PacketCounters> copy = new IntObjectHashMap<>(packets.size() + 1);
+            copy.putAll(packets);
+            counters = new PacketCounters(id, parent == null);
+            copy.put(id, counters);
+            packets = copy;
+            return counters;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package it.multicoredev.mclib.network.metrics;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public final class PacketSnapshot {
+    private final int id;
+    private final long packetsRead;
+    private final long packetsWritten;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final HistogramSnapshot decodeTime;
+    private final HistogramSnapshot encodeTime;
+
+    PacketSnapshot(int id, long packetsRead, long packetsWritten, long bytesRead, long bytesWritten, HistogramSnapshot decodeTime, HistogramSnapshot encodeTime) {
+        this.id = id;
+        this.packetsRead = packetsRead;
+        this.packetsWritten = packetsWritten;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.decodeTime = decodeTime;
+        this.encodeTime = encodeTime;
+    }
+
+    /**
+     * Get the id of the packet in the {@link it.multicoredev.mclib.network.protocol.PacketRegistry}.
+     *
+     * @return The id of the packet
+     */
+    public int getId() {
+        return id;
+    }
+
+    public long getPacketsRead() {
+        return packetsRead;
+    }
+
+    public long getPacketsWritten() {
+        return packetsWritten;
+    }
+
+    /**
+     * Get the bytes of the received frames of this packet, after decompression.
+     *
+     * @return The received bytes
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Get the bytes of the sent frames of this packet, before compression.
+     *
+     * @return The sent bytes
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Get the distribution of the decode times in nanoseconds.
+     *
+     * @return The decode times or null for the metrics of a single connection
+     */
+    @Nullable
+    public HistogramSnapshot getDecodeTime() {
+        return decodeTime;
+    }
+
+    /**
+     * Get the distribution of the encode times in nanoseconds.
+     *
+     * @return The encode times or null for the metrics of a single connection
+     */
+    @Nullable
+    public HistogramSnapshot getEncodeTime() {
+        return encodeTime;
+    }
+}
@@ -0,0 +1,286 @@
+package it.multicoredev.mclib.network.processor;
+
+import it.multicoredev.mclib.network.protocol.PacketField;
+import it.multicoredev.mclib.network.protocol.PacketSchemas;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ * <p>
+ * Generate a {@link it.multicoredev.mclib.network.protocol.PacketSchema} for every concrete class with
+ * {@link PacketField} fields, its own or inherited. The schema is a class named after the binary name of the packet
+ * with the {@link PacketSchemas#GENERATED_SUFFIX}, in the same package, that reads and writes the fields in order
+ * with straight-line code. The fields must be visible from the package of the packet.
+ */
+@SupportedAnnotationTypes("it.multicoredev.mclib.network.protocol.PacketField")
+public class PacketSchemaProcessor extends AbstractProcessor {
+    private static final String BUF = "it.multicoredev.mclib.network.PacketByteBuf";
+    private static final String SCHEMAS = "it.multicoredev.mclib.network.protocol.PacketSchemas";
+
+    private final Set<String> generated = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (annotations.isEmpty()) return false;
+
+        for (Element root : roundEnv.getRootElements()) {
+            scan(root);
+        }
+
+        return false;
+    }
+
+    private void scan(Element element) {
+        if (element.getKind() == ElementKind.CLASS && !element.getModifiers().contains(Modifier.ABSTRACT)) {
+            generate((TypeElement) element);
+        }
+
+        for (TypeElement nested : ElementFilter.typesIn(element.getEnclosedElements())) {
+            scan(nested);
+        }
+    }
+
+    private void generate(TypeElement type) {
+        List<VariableElement> fields = collectFields(type);
+        if (fields.isEmpty()) return;
+
+        Elements elements = processingEnv.getElementUtils();
+        String binaryName = elements.getBinaryName(type).toString();
+        if (!generated.add(binaryName)) return;
+        if (!validate(type, fields)) return;
+
+        PackageElement pkg = elements.getPackageOf(type);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)) + PacketSchemas.GENERATED_SUFFIX;
+        String packetType = processingEnv.getTypeUtils().erasure(type.asType()).toString();
+
+        StringBuilder constants = new StringBuilder();
+        StringBuilder encode = new StringBuilder();
+        StringBuilder decode = new StringBuilder();
+        for (int i = 0; i < fields.size(); i++) {
+            writeField(type, fields.get(i), i, constants, encode, decode);
+        }
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) source.append("package ").append(packageName).append(";\n\n");
+        source.append("/**\n")
+                .append(" * Generated by ").append(getClass().getName()).append(" from the @PacketField fields of ").append(packetType).append(", do not edit.\n")
+                .append(" */\n")
+                .append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n")
+                .append("public final class ").append(simpleName).append(" implements it.multicoredev.mclib.network.protocol.PacketSchema<").append(packetType).append("> {\n")
+                .append(constants)
+                .append(constants.length() > 0 ? "\n" : "")
+                .append("    public ").append(simpleName).append("() {\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public void encode(").append(packetType).append(" packet, ").append(BUF).append(" buf) {\n")
+                .append(encode)
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public void decode(").append(packetType).append(" packet, ").append(BUF).append(" buf) {\n")
+                .append(decode)
+                .append("    }\n")
+                .append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, type);
+            try (Writer writer = file.openWriter()) {
+                writer.write(source.toString());
+            }
+        } catch (IOException e) {
+            error("Cannot write the packet schema " + qualifiedName + ": " + e.getMessage(), type);
+        }
+    }
+
+    /**
+     * Collect the {@link PacketField} fields of the class and of its superclasses, sorted by order.
+     */
+    private List<VariableElement> collectFields(TypeElement type) {
+        List<VariableElement> fields = new ArrayList<>();
+        for (TypeElement current = type; current != null; current = superclass(current)) {
+            for (VariableElement field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+                if (field.getAnnotation(PacketField.class) != null) fields.add(field);
+            }
+        }
+
+        fields.sort(Comparator.comparingInt(field -> field.getAnnotation(PacketField.class).order()));
+        return fields;
+    }
+
+    private TypeElement superclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) return null;
+
+        TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+        return element.getQualifiedName().contentEquals("java.lang.Object") ? null : element;
+    }
+
+    private boolean validate(TypeElement type, List<VariableElement> fields) {
+        boolean valid = true;
+
+        for (Element current = type; current instanceof TypeElement; current = current.getEnclosingElement()) {
+            if (current.getModifiers().contains(Modifier.PRIVATE)) {
+                error("Packet " + type.getQualifiedName() + " cannot be private or nested in a private class to generate its schema", type);
+                valid = false;
+            }
+        }
+
+        Elements elements = processingEnv.getElementUtils();
+        PackageElement pkg = elements.getPackageOf(type);
+        for (int i = 0; i < fields.size(); i++) {
+            VariableElement field = fields.get(i);
+            PacketField annotation = field.getAnnotation(PacketField.class);
+            Set<Modifier> modifiers = field.getModifiers();
+
+            if (i > 0 && annotation.order() == fields.get(i - 1).getAnnotation(PacketField.class).order()) {
+                error("Packet field " + field.getSimpleName() + " has the same order " + annotation.order() + " as " + fields.get(i - 1).getSimpleName(), field);
+                valid = false;
+            }
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.FINAL)) {
+                error("Packet field " + field.getSimpleName() + " cannot be static or final", field);
+                valid = false;
+            }
+            if (modifiers.contains(Modifier.PRIVATE)) {
+                error("Packet field " + field.getSimpleName() + " cannot be private, make it package-private to generate the schema", field);
+                valid = false;
+            } else if (!modifiers.contains(Modifier.PUBLIC) && !elements.getPackageOf(field).equals(pkg)) {
+                error("Packet field " + field.getSimpleName() + " must be public to be used by subclasses in other packages", field);
+                valid = false;
+            }
+
+            TypeKind kind = field.asType().getKind();
+            if (annotation.varint() && kind != TypeKind.INT && kind != TypeKind.LONG) {
+                error("Packet field " + field.getSimpleName() + " is not an int or a long and cannot be a VarInt", field);
+                valid = false;
+            }
+        }
+
+        return valid;
+    }
+
+    /**
+     * Append the statements reading and writing a field, mapped like the reflective schemas of {@link PacketSchemas}.
+     */
+    private void writeField(TypeElement type, VariableElement field, int index, StringBuilder constants, StringBuilder encode, StringBuilder decode) {
+        Types types = processingEnv.getTypeUtils();
+        TypeElement owner = (TypeElement) field.getEnclosingElement();
+        String ownerType = types.erasure(owner.asType()).toString();
+        String access = (owner.equals(type) ? "packet" : "((" + ownerType + ") packet)") + "." + field.getSimpleName();
+        boolean varint = field.getAnnotation(PacketField.class).varint();
+
+        TypeMirror fieldType = field.asType();
+        String write;
+        String read;
+        switch (fieldType.getKind()) {
+            case BOOLEAN:
+                write = "buf.writeBoolean(" + access + ")";
+                read = "buf.readBoolean()";
+                break;
+            case BYTE:
+                write = "buf.writeByte(" + access + ")";
+                read = "buf.readByte()";
+                break;
+            case SHORT:
+                write = "buf.writeShort(" + access + ")";
+                read = "buf.readShort()";
+                break;
+            case CHAR:
+                write = "buf.writeChar(" + access + ")";
+                read = "buf.readChar()";
+                break;
+            case INT:
+                write = (varint ? "buf.writeVarInt(" : "buf.writeInt(") + access + ")";
+                read = varint ? "buf.readVarInt()" : "buf.readInt()";
+                break;
+            case LONG:
+                write = (varint ? "buf.writeVarLong(" : "buf.writeLong(") + access + ")";
+                read = varint ? "buf.readVarLong()" : "buf.readLong()";
+                break;
+            case FLOAT:
+                write = "buf.writeFloat(" + access + ")";
+                read = "buf.readFloat()";
+                break;
+            case DOUBLE:
+                write = "buf.writeDouble(" + access + ")";
+                read = "buf.readDouble()";
+                break;
+            default:
+                String erasure = types.erasure(fieldType).toString();
+                Element element = types.asElement(fieldType);
+
+                if (erasure.equals("java.lang.String")) {
+                    write = "buf.writeString(" + access + ")";
+                    read = "buf.readString()";
+                } else if (erasure.equals("byte[]")) {
+                    write = SCHEMAS + ".writeBytes(buf, " + access + ")";
+                    read = SCHEMAS + ".readBytes(buf)";
+                } else if (element != null && element.getKind() == ElementKind.ENUM) {
+                    constants.append("    private static final ").append(erasure).append("[] VALUES_").append(index).append(" = ").append(erasure).append(".values();\n");
+                    write = "buf.writeVarInt(" + access + ".ordinal())";
+                    read = SCHEMAS + ".readEnum(buf, VALUES_" + index + ")";
+                } else {
+                    String typeLiteral = types.isSameType(fieldType, types.erasure(fieldType))
+                            ? erasure + ".class"
+                            : SCHEMAS + ".fieldType(" + ownerType + ".class, \"" + field.getSimpleName() + "\")";
+                    constants.append("    private static final java.lang.reflect.Type TYPE_").append(index).append(" = ").append(typeLiteral).append(";\n");
+                    write = "buf.writeObject(" + access + ", TYPE_" + index + ")";
+                    read = "(" + erasure + ") buf.readObject(TYPE_" + index + ")";
+                }
+        }
+
+        encode.append("        ").append(write).append(";\n");
+        decode.append("        ").append(access).append(" = ").append(read).append(";\n");
+    }
+
+    private void error(String message, Element element) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,137 @@
+package it.multicoredev.mclib.network.protocol;
+
+import io.netty.util.Recycler;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.util.function.Supplier;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+final class PacketFactories {
+
+    private PacketFactories() {
+    }
+
+    /**
+     * Wrap the factory of a {@link RecyclablePacket} in a {@link Recycler}.
+     * The packets are taken from a pool of the calling thread and the factory is called only when the pool is empty,
+     * so once the pools are warm the decoding of recyclable packets doesn't allocate.
+     *
+     * @param factory The factory of the new packets
+     * @return The pooled factory
+     */
+    static Supplier<? extends Packet<?>> recycling(Supplier<? extends Packet<?>> factory) {
+        Recycler<RecyclablePacket<?>> recycler = new Recycler<RecyclablePacket<?>>() {
+            @Override
+            protected RecyclablePacket<?> newObject(Handle<RecyclablePacket<?>> handle) {
+                RecyclablePacket<?> packet = (RecyclablePacket<?>) factory.get();
+                packet.handle = handle;
+                return packet;
+            }
+        };
+
+        Supplier<RecyclablePacket<?>> pooled = () -> {
+            RecyclablePacket<?> packet = recycler.get();
+            packet.reuse();
+            return packet;
+        };
+        return pooled;
+    }
+
+    /**
+     * Create a factory for a {@link Packet} class with an empty constructor.
+     * When the class and its constructor are public and visible from this class loader the factory is spun with
+     * {@link LambdaMetafactory}, so a new packet is created with a direct constructor call.
+     * Otherwise the factory falls back to a cached reflective constructor.
+     *
+     * @param packetClass The {@link Packet} class
+     * @param <T>         The type of the packet
+     * @return The factory of the packet
+     */
+    static <T extends Packet<?>> Supplier<T> create(Class<T> packetClass) {
+        Constructor<T> constructor;
+        try {
+            constructor = packetClass.getDeclaredConstructor();
+        } catch (NoSuchMethodException e) {
+            return () -> {
+                throw new IllegalStateException("Packets must have an empty constructor: " + packetClass.getName());
+            };
+        }
+
+        if (isDirectlyAccessible(packetClass, constructor)) {
+            try {
+                return generated(packetClass);
+            } catch (Throwable ignored) {
+            }
+        }
+
+        return reflective(constructor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Packet<?>> Supplier<T> generated(Class<T> packetClass) throws Throwable {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle constructor = lookup.findConstructor(packetClass, MethodType.methodType(void.class));
+
+        CallSite site = LambdaMetafactory.metafactory(
+                lookup,
+                "get",
+                MethodType.methodType(Supplier.class),
+                MethodType.methodType(Object.class),
+                constructor,
+                MethodType.methodType(packetClass)
+        );
+
+        return (Supplier<T>) site.getTarget().invokeExact();
+    }
+
+    private static <T extends Packet<?>> Supplier<T> reflective(Constructor<T> constructor) {
+        try {
+            constructor.setAccessible(true);
+        } catch (RuntimeException ignored) {
+        }
+
+        return () -> {
+            try {
+                return constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot create packet " + constructor.getDeclaringClass().getName(), e);
+            }
+        };
+    }
+
+    private static boolean isDirectlyAccessible(Class<?> packetClass, Constructor<?> constructor) {
+        if (!Modifier.isPublic(packetClass.getModifiers()) || !Modifier.isPublic(constructor.getModifiers())) return false;
+        if (Modifier.isAbstract(packetClass.getModifiers())) return false;
+
+        try {
+            return Class.forName(packetClass.getName(), false, PacketFactories.class.getClassLoader()) == packetClass;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
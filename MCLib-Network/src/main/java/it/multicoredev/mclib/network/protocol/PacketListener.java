@@ -25,4 +25,25 @@ import it.multicoredev.mclib.network.NetworkHandler;
 public interface PacketListener {
 
     void setNetworkHandler(NetworkHandler networkHandler);
+
+    /**
+     * Called on the event loop thread when the connection becomes writable or unwritable.
+     * A connection becomes unwritable when the bytes waiting to be sent exceed the high water mark and writable again
+     * when they drop below the low water mark (see {@link it.multicoredev.mclib.network.NetworkSettings#setWriteBufferWaterMark(int, int)}).
+     * Producers can use this to stop sending packets to slow peers.
+     *
+     * @param writable True if the connection is writable, False otherwise
+     */
+    default void onWritabilityChanged(boolean writable) {
+    }
+
+    /**
+     * Called when the state of the connection changes.
+     * {@link ConnectionState#CONNECTED} and {@link ConnectionState#DISCONNECTED} are called on the event loop thread
+     * of the connection, {@link ConnectionState#RECONNECTING} and {@link ConnectionState#CLOSED} only by the clients.
+     *
+     * @param state The new state of the connection
+     */
+    default void onConnectionStateChanged(ConnectionState state) {
+    }
 }
@@ -2,8 +2,12 @@ package it.multicoredev.mclib.network.protocol;
 
 import org.jetbrains.annotations.Nullable;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * Copyright © 2020 by Lorenzo Magni
@@ -26,36 +30,129 @@ import java.util.Map;
  * THE POSSIBILITY OF SUCH DAMAGE.
  */
 public class PacketRegistry {
-    private final HashMap<Integer, Class<? extends Packet<?>>> packets = new HashMap<>();
-    private static PacketRegistry instance;
+    private static final int FNV_32_OFFSET = 0x811c9dc5;
+    private static final int FNV_32_PRIME = 0x01000193;
+    private static final long FNV_64_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_64_PRIME = 0x100000001b3L;
 
-    private PacketRegistry() {
+    private final Map<Integer, Class<? extends Packet<?>>> packets = new HashMap<>();
+    private final Map<Class<?>, Integer> ids = new IdentityHashMap<>();
+    private final Map<Integer, Supplier<? extends Packet<?>>> factories = new HashMap<>();
+    private int protocolVersion = 0;
+    private int minProtocolVersion = 0;
+    private volatile boolean frozen;
+    private volatile Tables tables;
+
+    /**
+     * Create an empty packet registry, with its own packets and packet ids.
+     * Pass it to the sockets with {@link it.multicoredev.mclib.network.NetworkSettings#setPacketRegistry(PacketRegistry)},
+     * so a single process can speak many protocols with independent id spaces.
+     */
+    public PacketRegistry() {
     }
 
     /**
-     * Gets an instance of the packet registry.
+     * Get the default packet registry, used by the sockets and the codecs that are not given one.
      *
-     * @return Return the instance of the PacketRegistry
+     * @return The default PacketRegistry
      */
     public static PacketRegistry getInstance() {
-        if (instance == null) instance = new PacketRegistry();
-        return instance;
+        return DefaultHolder.INSTANCE;
     }
 
     /**
-     * Register a {@link Packet} in the registry.
+     * Register a {@link Packet} in the registry with the stable id hashed from its class name (see {@link #stableId(Class)}).
+     * The factory used to create the packet when it's received is generated from its empty constructor.
      *
      * @param packet {@link Packet} class to register
+     * @throws IllegalStateException    If the registry is frozen
+     * @throws IllegalArgumentException If the id of the packet is already used by another packet or the packet is already
+     *                                  registered with another id
      */
     public void registerPacket(Class<? extends Packet<?>> packet) {
-        if (packets.containsValue(packet)) return;
-        packets.put(packets.size(), packet);
+        registerPacket(packet, stableId(packet));
+    }
+
+    /**
+     * Register a {@link Packet} in the registry with an explicit stable id.
+     * Explicit ids don't change when the class is renamed or relocated.
+     *
+     * @param packet {@link Packet} class to register
+     * @param id     The stable id of the packet, not negative
+     * @throws IllegalStateException    If the registry is frozen
+     * @throws IllegalArgumentException If the id is negative, already used by another packet or the packet is already
+     *                                  registered with another id
+     */
+    public void registerPacket(Class<? extends Packet<?>> packet, int id) {
+        if (frozen) throw new IllegalStateException("PacketRegistry is frozen");
+
+        register(packet, id, PacketFactories.create(packet));
+    }
+
+    /**
+     * Register a {@link Packet} in the registry with the factory used to create it when it's received
+     * and the stable id hashed from its class name (see {@link #stableId(Class)}).
+     *
+     * @param packet  {@link Packet} class to register
+     * @param factory The factory of the {@link Packet}, usually a constructor reference
+     * @param <T>     The type of the packet
+     * @throws IllegalStateException    If the registry is frozen
+     * @throws IllegalArgumentException If the id of the packet is already used by another packet or the packet is already
+     *                                  registered with another id
+     */
+    public <T extends Packet<?>> void registerPacket(Class<T> packet, Supplier<T> factory) {
+        registerPacket(packet, stableId(packet), factory);
+    }
+
+    /**
+     * Register a {@link Packet} in the registry with an explicit stable id and the factory used to create it when it's received.
+     *
+     * @param packet  {@link Packet} class to register
+     * @param id      The stable id of the packet, not negative
+     * @param factory The factory of the {@link Packet}, usually a constructor reference
+     * @param <T>     The type of the packet
+     * @throws IllegalStateException    If the registry is frozen
+     * @throws IllegalArgumentException If the id is negative, already used by another packet or the packet is already
+     *                                  registered with another id
+     */
+    public <T extends Packet<?>> void registerPacket(Class<T> packet, int id, Supplier<T> factory) {
+        if (frozen) throw new IllegalStateException("PacketRegistry is frozen");
+
+        register(packet, id, factory);
+    }
+
+    /**
+     * Add a packet to the mutable maps, only accessed with the lock held. The readers never see the maps,
+     * only the immutable {@link Tables} built from them and published through a volatile field.
+     */
+    private synchronized void register(Class<? extends Packet<?>> packet, int id, Supplier<? extends Packet<?>> factory) {
+        if (frozen) throw new IllegalStateException("PacketRegistry is frozen");
+        if (id < 0) throw new IllegalArgumentException("Packet ids cannot be negative");
+
+        Integer registered = ids.get(packet);
+        if (registered != null) {
+            if (registered == id) return;
+            throw new IllegalArgumentException("Packet " + packet.getName() + " is already registered with id " + registered + ", cannot register it with id " + id);
+        }
+
+        Class<? extends Packet<?>> existing = packets.get(id);
+        if (existing != null) {
+            throw new IllegalArgumentException("Packet id " + id + " of " + packet.getName() + " is already used by " + existing.getName() + ", register one of them with an explicit id");
+        }
+
+        if (RecyclablePacket.class.isAssignableFrom(packet)) factory = PacketFactories.recycling(factory);
+
+        packets.put(id, packet);
+        ids.put(packet, id);
+        factories.put(id, factory);
+        tables = null;
     }
 
     /**
      * Register {@link Packet} in the registry.
      *
      * @param packets {@link Packet} classes to register
+     * @throws IllegalStateException If the registry is frozen
      */
     public void registerPackets(Class<Packet<?>>... packets) {
         for (Class<Packet<?>> packet : packets) {
@@ -63,6 +160,97 @@ public class PacketRegistry {
         }
     }
 
+    /**
+     * Get the stable id of a packet class registered without an explicit id: the 32 bit FNV-1a hash of its binary name,
+     * without the sign bit. The id is the same in every process as long as the class is not renamed or relocated.
+     *
+     * @param packet The packet class
+     * @return The hashed stable id
+     */
+    public static int stableId(Class<?> packet) {
+        int hash = FNV_32_OFFSET;
+        for (byte b : packet.getName().getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= FNV_32_PRIME;
+        }
+
+        return hash & Integer.MAX_VALUE;
+    }
+
+    /**
+     * Set the version of the protocol spoken with this registry.
+     * During the handshake the peers agree on the lowest of their versions, the connection is refused if the agreed
+     * version is lower than the minimum version of one of them.
+     *
+     * @param version    The version of the protocol
+     * @param minVersion The minimum version of the peers accepted
+     * @throws IllegalStateException    If the registry is frozen
+     * @throws IllegalArgumentException If the minimum version is greater than the version
+     */
+    public synchronized void setProtocolVersion(int version, int minVersion) {
+        if (frozen) throw new IllegalStateException("PacketRegistry is frozen");
+        if (minVersion > version) throw new IllegalArgumentException("minVersion cannot be greater than version");
+        this.protocolVersion = version;
+        this.minProtocolVersion = minVersion;
+    }
+
+    public synchronized int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    public synchronized int getMinProtocolVersion() {
+        return minProtocolVersion;
+    }
+
+    /**
+     * Freeze the registry.
+     * After this call no more packets can be registered. The registry is frozen by the first connection handshake,
+     * since the peers negotiate the packets registered at that time.
+     */
+    public synchronized void freeze() {
+        if (frozen) return;
+        tables();
+        frozen = true;
+    }
+
+    /**
+     * Return true if the registry has been frozen.
+     *
+     * @return True if frozen, False otherwise
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Get the number of registered packets.
+     *
+     * @return The number of packets
+     */
+    public int size() {
+        return tables().classes.length;
+    }
+
+    /**
+     * Get the fingerprint of the registered packets, a 64 bit hash of their sorted stable ids.
+     * Two registries with the same fingerprint have the same packet ids.
+     *
+     * @return The fingerprint of the registry
+     */
+    public long getFingerprint() {
+        return tables().fingerprint;
+    }
+
+    /**
+     * Get the stable ids of the registered packets, sorted. The packet id sent on the wire is the index of the stable id
+     * in this array, so it doesn't depend on the order of registration.
+     *
+     * @return A copy of the sorted stable ids
+     */
+    public int[] getStableIds() {
+        return tables().stableIds.clone();
+    }
+
     /**
      * Get a packet class from its id.
      *
@@ -71,7 +259,20 @@ public class PacketRegistry {
      */
     @Nullable
     public Class<? extends Packet<?>> getPacketClass(int id) {
-        return packets.get(id);
+        Tables tables = tables();
+        return id >= 0 && id < tables.classes.length ? tables.classes[id] : null;
+    }
+
+    /**
+     * Get the factory of a packet from its id.
+     *
+     * @param id The id of the {@link Packet}
+     * @return The factory of the {@link Packet} or null if the id does not exists
+     */
+    @Nullable
+    public Supplier<? extends Packet<?>> getPacketFactory(int id) {
+        Tables tables = tables();
+        return id >= 0 && id < tables.factories.length ? tables.factories[id] : null;
     }
 
     /**
@@ -82,11 +283,7 @@ public class PacketRegistry {
      */
     @Nullable
     public Integer getPacketId(Packet<?> packet) {
-        for (Map.Entry<Integer, Class<? extends Packet<?>>> entry : packets.entrySet()) {
-            if (entry.getValue().equals(packet.getClass())) return entry.getKey();
-        }
-
-        return null;
+        return getPacketId(packet.getClass());
     }
 
     /**
@@ -97,10 +294,86 @@ public class PacketRegistry {
      */
     @Nullable
     public Integer getPacketId(Class<? extends Packet> packetClass) {
-        for (Map.Entry<Integer, Class<? extends Packet<?>>> entry : packets.entrySet()) {
-            if (entry.getValue().equals(packetClass)) return entry.getKey();
+        return tables().ids.get(packetClass);
+    }
+
+    /**
+     * Get the id of the packet with a stable id.
+     *
+     * @param stableId The stable id of the {@link Packet}
+     * @return The id of the {@link Packet} or null if no packet has the stable id
+     */
+    @Nullable
+    public Integer getPacketIdByStableId(int stableId) {
+        int id = Arrays.binarySearch(tables().stableIds, stableId);
+        return id >= 0 ? id : null;
+    }
+
+    /**
+     * Get the stable id of a {@link Packet}.
+     *
+     * @param packetClass The packet class
+     * @return The stable id of the {@link Packet} or null if the packet is not registered
+     */
+    @Nullable
+    public Integer getStableId(Class<? extends Packet> packetClass) {
+        Integer id = getPacketId(packetClass);
+        return id != null ? tables().stableIds[id] : null;
+    }
+
+    /**
+     * Get the lookup tables, built again after every registration and kept once the registry is frozen.
+     */
+    private Tables tables() {
+        Tables tables = this.tables;
+        if (tables != null) return tables;
+
+        synchronized (this) {
+            if (this.tables == null) this.tables = new Tables(packets, factories);
+            return this.tables;
         }
+    }
 
-        return null;
+    private static final class DefaultHolder {
+        private static final PacketRegistry INSTANCE = new PacketRegistry();
+    }
+
+    /**
+     * Immutable lookup tables: arrays indexed by packet id and an identity map keyed by class,
+     * read from any thread without locking.
+     */
+    private static final class Tables {
+        private final int[] stableIds;
+        private final Class<? extends Packet<?>>[] classes;
+        private final Map<Class<?>, Integer> ids;
+        private final Supplier<? extends Packet<?>>[] factories;
+        private final long fingerprint;
+
+        @SuppressWarnings("unchecked")
+        private Tables(Map<Integer, Class<? extends Packet<?>>> packets, Map<Integer, Supplier<? extends Packet<?>>> factories) {
+            this.stableIds = new int[packets.size()];
+            int i = 0;
+            for (int stableId : packets.keySet()) {
+                stableIds[i++] = stableId;
+            }
+            Arrays.sort(stableIds);
+
+            this.classes = (Class<? extends Packet<?>>[]) new Class<?>[stableIds.length];
+            this.factories = (Supplier<? extends Packet<?>>[]) new Supplier<?>[stableIds.length];
+            this.ids = new IdentityHashMap<>(stableIds.length);
+
+            long fingerprint = FNV_64_OFFSET;
+            for (int id = 0; id < stableIds.length; id++) {
+                classes[id] = packets.get(stableIds[id]);
+                this.factories[id] = factories.get(stableIds[id]);
+                ids.put(classes[id], id);
+
+                for (int shift = 24; shift >= 0; shift -= 8) {
+                    fingerprint ^= (stableIds[id] >>> shift) & 0xFF;
+                    fingerprint *= FNV_64_PRIME;
+                }
+            }
+            this.fingerprint = fingerprint;
+        }
     }
 }
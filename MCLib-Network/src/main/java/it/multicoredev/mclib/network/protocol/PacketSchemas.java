@@ -0,0 +1,154 @@
+package it.multicoredev.mclib.network.protocol;
+
+import it.multicoredev.mclib.network.PacketByteBuf;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public final class PacketSchemas {
+    /**
+     * Suffix of the binary name of the schemas generated by the annotation processor.
+     */
+    public static final String GENERATED_SUFFIX = "$$PacketSchema";
+
+    private static final Map<Class<?>, PacketSchema<?>> schemas = new ConcurrentHashMap<>();
+
+    private PacketSchemas() {
+    }
+
+    /**
+     * Get the schema of a class with {@link PacketField} fields.
+     * The schema generated at compile time is used when present, otherwise the schema is compiled with reflection.
+     * The schema is created once and cached.
+     *
+     * @param type The class of the packet
+     * @param <T>  The type of the packet
+     * @return The schema of the class
+     * @throws IllegalArgumentException If the fields of the class are not valid
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PacketSchema<T> get(@NotNull Class<T> type) throws IllegalArgumentException {
+        PacketSchema<?> schema = schemas.get(type);
+        if (schema == null) {
+            schema = load(type);
+            PacketSchema<?> previous = schemas.putIfAbsent(type, schema);
+            if (previous != null) schema = previous;
+        }
+
+        return (PacketSchema<T>) schema;
+    }
+
+    /**
+     * Compile the schema of a class with reflection, ignoring the generated one.
+     *
+     * @param type The class of the packet
+     * @param <T>  The type of the packet
+     * @return The reflective schema of the class
+     * @throws IllegalArgumentException If the fields of the class are not valid
+     */
+    public static <T> PacketSchema<T> reflective(@NotNull Class<T> type) throws IllegalArgumentException {
+        return ReflectivePacketSchema.compile(type);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> PacketSchema<T> load(Class<T> type) {
+        Class<?> generated;
+        try {
+            generated = Class.forName(type.getName() + GENERATED_SUFFIX, true, type.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return ReflectivePacketSchema.compile(type);
+        }
+
+        if (!PacketSchema.class.isAssignableFrom(generated)) return ReflectivePacketSchema.compile(type);
+
+        try {
+            return (PacketSchema<T>) generated.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Cannot create the generated schema of " + type.getName(), e);
+        }
+    }
+
+    /**
+     * Get the generic type of a field, used by the generated schemas to read parameterized objects.
+     *
+     * @param owner The class declaring the field
+     * @param name  The name of the field
+     * @return The generic type of the field
+     */
+    public static Type fieldType(Class<?> owner, String name) {
+        try {
+            return owner.getDeclaredField(name).getGenericType();
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("Field " + name + " not found in " + owner.getName(), e);
+        }
+    }
+
+    /**
+     * Write a byte array prefixed by its length.
+     *
+     * @param buf   The buffer to write to
+     * @param bytes The bytes to write
+     */
+    public static void writeBytes(PacketByteBuf buf, byte[] bytes) {
+        buf.writeVarInt(bytes.length);
+        buf.writeBytes(bytes);
+    }
+
+    /**
+     * Read a byte array prefixed by its length.
+     *
+     * @param buf The buffer to read from
+     * @return The bytes read
+     * @throws IllegalArgumentException If the length is not valid
+     */
+    public static byte[] readBytes(PacketByteBuf buf) throws IllegalArgumentException {
+        int length = buf.readVarInt();
+        if (length < 0 || length > buf.readableBytes()) {
+            throw new IllegalArgumentException("Invalid length " + length + ", " + buf.readableBytes() + " bytes readable");
+        }
+
+        byte[] bytes = new byte[length];
+        buf.readBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Read an enum constant written as its ordinal.
+     *
+     * @param buf       The buffer to read from
+     * @param constants The constants of the enum
+     * @param <E>       The type of the enum
+     * @return The enum constant
+     * @throws IllegalArgumentException If the ordinal is not valid
+     */
+    public static <E> E readEnum(PacketByteBuf buf, E[] constants) throws IllegalArgumentException {
+        int ordinal = buf.readVarInt();
+        if (ordinal < 0 || ordinal >= constants.length) {
+            throw new IllegalArgumentException("Invalid ordinal " + ordinal + " for enum " + constants.getClass().getComponentType().getName());
+        }
+
+        return constants[ordinal];
+    }
+}
@@ -0,0 +1,66 @@
+package it.multicoredev.mclib.network.protocol;
+
+import io.netty.util.Recycler;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public abstract class RecyclablePacket<T extends PacketListener> implements Packet<T> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<RecyclablePacket> RECYCLED = AtomicIntegerFieldUpdater.newUpdater(RecyclablePacket.class, "recycled");
+
+    Recycler.Handle<RecyclablePacket<?>> handle;
+    private volatile int recycled;
+
+    /**
+     * Clear the state of the packet before it goes back to the pool.
+     * After this call the packet must be equivalent to a packet created with its empty constructor.
+     */
+    protected abstract void reset();
+
+    /**
+     * Reset the packet and return it to the pool of the thread that created it.
+     * Received packets are recycled automatically after {@link #processPacket(PacketListener)} returns,
+     * so the listener must not keep a reference to them (copy the values it needs instead).
+     * Packets not created by the {@link PacketRegistry} are only reset.
+     *
+     * @throws IllegalStateException If the packet has already been recycled and not handed out by the pool since
+     */
+    public final void recycle() {
+        if (handle == null) {
+            reset();
+            return;
+        }
+
+        // Checked before the reset: a packet recycled twice may already have been handed out again by the pool
+        if (!RECYCLED.compareAndSet(this, 0, 1)) throw new IllegalStateException("Packet already recycled");
+        reset();
+        handle.recycle(this);
+    }
+
+    /**
+     * Mark a pooled packet as in use when the pool hands it out.
+     */
+    void reuse() {
+        recycled = 0;
+    }
+}
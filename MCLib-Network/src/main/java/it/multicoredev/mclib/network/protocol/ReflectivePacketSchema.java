@@ -0,0 +1,237 @@
+package it.multicoredev.mclib.network.protocol;
+
+import it.multicoredev.mclib.network.PacketByteBuf;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+final class ReflectivePacketSchema<T> implements PacketSchema<T> {
+    private static final int BOOLEAN = 0;
+    private static final int BYTE = 1;
+    private static final int SHORT = 2;
+    private static final int CHAR = 3;
+    private static final int INT = 4;
+    private static final int VAR_INT = 5;
+    private static final int LONG = 6;
+    private static final int VAR_LONG = 7;
+    private static final int FLOAT = 8;
+    private static final int DOUBLE = 9;
+    private static final int STRING = 10;
+    private static final int BYTES = 11;
+    private static final int ENUM = 12;
+    private static final int OBJECT = 13;
+
+    private final Class<T> type;
+    private final Property[] properties;
+
+    private ReflectivePacketSchema(Class<T> type, Property[] properties) {
+        this.type = type;
+        this.properties = properties;
+    }
+
+    /**
+     * Compile the schema of a class, mapping the fields exactly like the schemas generated by the annotation processor.
+     */
+    static <T> ReflectivePacketSchema<T> compile(Class<T> type) throws IllegalArgumentException {
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (field.isAnnotationPresent(PacketField.class)) fields.add(field);
+            }
+        }
+        fields.sort(Comparator.comparingInt(field -> field.getAnnotation(PacketField.class).order()));
+
+        Property[] properties = new Property[fields.size()];
+        for (int i = 0; i < properties.length; i++) {
+            Field field = fields.get(i);
+            if (i > 0 && order(field) == order(fields.get(i - 1))) {
+                throw new IllegalArgumentException("Fields " + fields.get(i - 1).getName() + " and " + field.getName() + " of " + type.getName() + " have the same order " + order(field));
+            }
+
+            int modifiers = field.getModifiers();
+            if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers)) {
+                throw new IllegalArgumentException("Packet field " + type.getName() + "." + field.getName() + " cannot be static or final");
+            }
+
+            field.setAccessible(true);
+            properties[i] = new Property(field);
+        }
+
+        return new ReflectivePacketSchema<>(type, properties);
+    }
+
+    private static int order(Field field) {
+        return field.getAnnotation(PacketField.class).order();
+    }
+
+    @Override
+    public void encode(T packet, PacketByteBuf buf) {
+        try {
+            for (Property property : properties) {
+                property.write(buf, packet);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Packet " + type.getName() + " is not serializable", e);
+        }
+    }
+
+    @Override
+    public void decode(T packet, PacketByteBuf buf) {
+        try {
+            for (Property property : properties) {
+                property.read(buf, packet);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Packet " + type.getName() + " is not deserializable", e);
+        }
+    }
+
+    private static final class Property {
+        private final Field field;
+        private final int kind;
+        private final Type genericType;
+        private final Object[] constants;
+
+        private Property(Field field) {
+            this.field = field;
+            Class<?> type = field.getType();
+            boolean varint = field.getAnnotation(PacketField.class).varint();
+
+            if (type == boolean.class) kind = BOOLEAN;
+            else if (type == byte.class) kind = BYTE;
+            else if (type == short.class) kind = SHORT;
+            else if (type == char.class) kind = CHAR;
+            else if (type == int.class) kind = varint ? VAR_INT : INT;
+            else if (type == long.class) kind = varint ? VAR_LONG : LONG;
+            else if (type == float.class) kind = FLOAT;
+            else if (type == double.class) kind = DOUBLE;
+            else if (type == String.class) kind = STRING;
+            else if (type == byte[].class) kind = BYTES;
+            else if (type.isEnum()) kind = ENUM;
+            else kind = OBJECT;
+
+            if (varint && kind != VAR_INT && kind != VAR_LONG) {
+                throw new IllegalArgumentException("Packet field " + field.getDeclaringClass().getName() + "." + field.getName() + " is not an int or a long and cannot be a VarInt");
+            }
+
+            genericType = field.getGenericType();
+            constants = kind == ENUM ? type.getEnumConstants() : null;
+        }
+
+        private void write(PacketByteBuf buf, Object packet) throws IllegalAccessException {
+            switch (kind) {
+                case BOOLEAN:
+                    buf.writeBoolean(field.getBoolean(packet));
+                    break;
+                case BYTE:
+                    buf.writeByte(field.getByte(packet));
+                    break;
+                case SHORT:
+                    buf.writeShort(field.getShort(packet));
+                    break;
+                case CHAR:
+                    buf.writeChar(field.getChar(packet));
+                    break;
+                case INT:
+                    buf.writeInt(field.getInt(packet));
+                    break;
+                case VAR_INT:
+                    buf.writeVarInt(field.getInt(packet));
+                    break;
+                case LONG:
+                    buf.writeLong(field.getLong(packet));
+                    break;
+                case VAR_LONG:
+                    buf.writeVarLong(field.getLong(packet));
+                    break;
+                case FLOAT:
+                    buf.writeFloat(field.getFloat(packet));
+                    break;
+                case DOUBLE:
+                    buf.writeDouble(field.getDouble(packet));
+                    break;
+                case STRING:
+                    buf.writeString((String) field.get(packet));
+                    break;
+                case BYTES:
+                    PacketSchemas.writeBytes(buf, (byte[]) field.get(packet));
+                    break;
+                case ENUM:
+                    buf.writeVarInt(((Enum<?>) field.get(packet)).ordinal());
+                    break;
+                default:
+                    buf.writeObject(field.get(packet), genericType);
+            }
+        }
+
+        private void read(PacketByteBuf buf, Object packet) throws IllegalAccessException {
+            switch (kind) {
+                case BOOLEAN:
+                    field.setBoolean(packet, buf.readBoolean());
+                    break;
+                case BYTE:
+                    field.setByte(packet, buf.readByte());
+                    break;
+                case SHORT:
+                    field.setShort(packet, buf.readShort());
+                    break;
+                case CHAR:
+                    field.setChar(packet, buf.readChar());
+                    break;
+                case INT:
+                    field.setInt(packet, buf.readInt());
+                    break;
+                case VAR_INT:
+                    field.setInt(packet, buf.readVarInt());
+                    break;
+                case LONG:
+                    field.setLong(packet, buf.readLong());
+                    break;
+                case VAR_LONG:
+                    field.setLong(packet, buf.readVarLong());
+                    break;
+                case FLOAT:
+                    field.setFloat(packet, buf.readFloat());
+                    break;
+                case DOUBLE:
+                    field.setDouble(packet, buf.readDouble());
+                    break;
+                case STRING:
+                    field.set(packet, buf.readString());
+                    break;
+                case BYTES:
+                    field.set(packet, PacketSchemas.readBytes(buf));
+                    break;
+                case ENUM:
+                    field.set(packet, PacketSchemas.readEnum(buf, constants));
+                    break;
+                default:
+                    field.set(packet, buf.readObject(genericType));
+            }
+        }
+    }
+}
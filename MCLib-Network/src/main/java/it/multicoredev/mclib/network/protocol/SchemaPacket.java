@@ -0,0 +1,52 @@
+package it.multicoredev.mclib.network.protocol;
+
+import it.multicoredev.mclib.network.PacketByteBuf;
+import it.multicoredev.mclib.network.exceptions.DecoderException;
+import it.multicoredev.mclib.network.exceptions.EncoderException;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public abstract class SchemaPacket<T extends PacketListener> implements Packet<T> {
+
+    /**
+     * A packet encoded and decoded by the {@link PacketSchema} of its {@link PacketField} fields.
+     * The schema is generated at compile time by the annotation processor of MCLib-Network, packets compiled without
+     * it (e.g. loaded by plugins) use a schema compiled with reflection.
+     * Packets that cannot extend this class can call {@link PacketSchemas#get(Class)} from their own encode and decode.
+     */
+    protected SchemaPacket() {
+    }
+
+    @Override
+    public void encode(PacketByteBuf buf) throws EncoderException {
+        schema().encode(this, buf);
+    }
+
+    @Override
+    public void decode(PacketByteBuf buf) throws DecoderException {
+        schema().decode(this, buf);
+    }
+
+    @SuppressWarnings("unchecked")
+    private PacketSchema<Object> schema() {
+        return (PacketSchema<Object>) (PacketSchema<?>) PacketSchemas.get(getClass());
+    }
+}
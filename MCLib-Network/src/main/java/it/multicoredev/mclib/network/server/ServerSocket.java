@@ -1,21 +1,47 @@
 package it.multicoredev.mclib.network.server;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
-import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.internal.PlatformDependent;
+import it.multicoredev.mclib.network.Futures;
 import it.multicoredev.mclib.network.NetworkHandler;
-import it.multicoredev.mclib.network.PacketDecoder;
+import it.multicoredev.mclib.network.NetworkSettings;
+import it.multicoredev.mclib.network.PacketChannelInitializer;
 import it.multicoredev.mclib.network.PacketEncoder;
+import it.multicoredev.mclib.network.PacketProtocol;
+import it.multicoredev.mclib.network.Transport;
+import it.multicoredev.mclib.network.exceptions.EncoderException;
+import it.multicoredev.mclib.network.exceptions.PacketSendException;
+import it.multicoredev.mclib.network.metrics.NetworkMetrics;
+import it.multicoredev.mclib.network.protocol.Packet;
 import it.multicoredev.mclib.network.protocol.PacketListener;
+import it.multicoredev.mclib.network.protocol.PacketRegistry;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+
 /**
  * Copyright © 2020 by Lorenzo Magni
  * This file is part of MCLib-network.
@@ -40,15 +66,32 @@ public class ServerSocket {
     private final int port;
     private final Class<? extends PacketListener> packetListener;
     private final Class<? extends NetworkHandler> networkHandlerClass;
+    private final NetworkSettings settings;
     private LogLevel logLevel = LogLevel.INFO;
 
     private EventLoopGroup parent;
     private EventLoopGroup child;
+    private boolean ownsParent;
+    private boolean ownsChild;
+    private final List<Channel> channels = new CopyOnWriteArrayList<>();
+    private final ChannelGroup connections = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+    private final Map<Long, NetworkHandler> handlers = new ConcurrentHashMap<>();
+    private boolean started;
+    private CompletableFuture<Void> stopFuture;
 
-    public ServerSocket(int port, Class<? extends PacketListener> packetListener, Class<? extends NetworkHandler> networkHandlerClass) {
+    public ServerSocket(int port, Class<? extends PacketListener> packetListener, Class<? extends NetworkHandler> networkHandlerClass, NetworkSettings settings) {
         this.port = port;
         this.packetListener = packetListener;
         this.networkHandlerClass = networkHandlerClass;
+        this.settings = settings;
+    }
+
+    public ServerSocket(int port, Class<? extends PacketListener> packetListener, Class<? extends NetworkHandler> networkHandlerClass) {
+        this(port, packetListener, networkHandlerClass, new NetworkSettings());
+    }
+
+    public NetworkSettings getSettings() {
+        return settings;
     }
 
     public LogLevel getLogLevel() {
@@ -59,37 +102,213 @@ public class ServerSocket {
         this.logLevel = logLevel;
     }
 
-    public void startServer() throws InterruptedException {
-        parent = new NioEventLoopGroup();
-        child = new NioEventLoopGroup();
+    /**
+     * Start the server without blocking the calling thread.
+     * A server can be started again once the future of {@link #stop()} has completed.
+     *
+     * @return A future completed when the server is listening or completed exceptionally if the server cannot bind the port
+     * @throws IllegalStateException If the server has already been started or it's still stopping
+     */
+    public synchronized CompletableFuture<Void> start() {
+        if (stopFuture != null) throw new IllegalStateException("Server is stopping");
+        if (started) throw new IllegalStateException("Server already started");
+        if (settings.getSslContext() != null && !settings.getSslContext().isServer()) throw new IllegalStateException("ServerSocket requires a server SslContext");
+        started = true;
+
+        Transport transport = settings.getTransport();
+        ownsParent = settings.getBossGroup() == null;
+        ownsChild = settings.getWorkerGroup() == null;
+        parent = ownsParent ? transport.newEventLoopGroup(settings.getBossThreads()) : settings.getBossGroup();
+        child = ownsChild ? transport.newEventLoopGroup(settings.getWorkerThreads()) : settings.getWorkerGroup();
 
-        ChannelInitializer<SocketChannel> channelInitializer = new ChannelInitializer<SocketChannel>() {
+        PacketChannelInitializer channelInitializer = new PacketChannelInitializer(settings, this::createNetworkHandler) {
             @Override
-            protected void initChannel(SocketChannel channel) {
-                channel.pipeline().addLast(new PacketDecoder(), new PacketEncoder(), createNetworkHandler());
+            protected void initChannel(Channel channel) {
+                super.initChannel(channel);
+                connections.add(channel);
+
+                NetworkHandler handler = (NetworkHandler) channel.pipeline().get(NETWORK_HANDLER);
+                if (handler != null) {
+                    handlers.put(handler.getConnectionId(), handler);
+                    channel.closeFuture().addListener(future -> handlers.remove(handler.getConnectionId()));
+                }
             }
         };
 
         ServerBootstrap bootstrap = new ServerBootstrap();
         bootstrap.group(parent, child);
-        bootstrap.channel(NioServerSocketChannel.class);
+        bootstrap.channel(transport.getServerChannelClass());
         bootstrap.handler(new LoggingHandler(logLevel));
         bootstrap.option(ChannelOption.SO_BACKLOG, 128);
+        bootstrap.option(ChannelOption.ALLOCATOR, settings.getAllocator());
+        bootstrap.childOption(ChannelOption.ALLOCATOR, settings.getAllocator());
         bootstrap.childOption(ChannelOption.SO_KEEPALIVE, true);
+        bootstrap.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, settings.getWriteBufferWaterMark());
         bootstrap.childHandler(channelInitializer);
 
+        int binds = 1;
+        if (settings.isReusePort() && transport == Transport.EPOLL) {
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            binds = settings.getBossThreads();
+        }
+
+        List<ChannelFuture> futures = new ArrayList<>();
+        for (int i = 0; i < binds; i++) {
+            ChannelFuture future = bootstrap.bind(port);
+            channels.add(future.channel());
+            futures.add(future);
+        }
+
+        CompletableFuture<Void> bound = Futures.allOf(futures);
+        bound.whenComplete((v, t) -> {
+            if (t != null) stop();
+        });
+
+        return bound;
+    }
+
+    /**
+     * Start the server and block the calling thread until the server is stopped.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public void startServer() throws InterruptedException {
         try {
-            ChannelFuture future = bootstrap.bind(port).sync();
-            future.channel().closeFuture().sync();
+            start().get();
+
+            for (Channel channel : channels) {
+                channel.closeFuture().sync();
+            }
+        } catch (ExecutionException e) {
+            PlatformDependent.throwException(e.getCause());
         } finally {
-            parent.shutdownGracefully();
-            child.shutdownGracefully();
+            stop();
+        }
+    }
+
+    /**
+     * Stop the server gracefully without blocking the calling thread.
+     * The server stops accepting connections, the packets already written to the connected peers are flushed,
+     * then the connections are closed and the event loop groups created by the server are shut down.
+     * Calling this method while the server is stopping returns the same future, after it completes the server
+     * can be started again.
+     *
+     * @return A future completed when the server has been stopped
+     */
+    public synchronized CompletableFuture<Void> stop() {
+        if (!started) return CompletableFuture.completedFuture(null);
+        if (stopFuture != null) return stopFuture;
+
+        for (Channel channel : channels) {
+            channel.close();
         }
+
+        CompletableFuture<Void> stopping = Futures.toCompletable(connections.writeAndFlush(Unpooled.EMPTY_BUFFER))
+                .handle((v, t) -> null)
+                .thenCompose(v -> Futures.toCompletable(connections.close()))
+                .handle((v, t) -> null)
+                .thenCompose(v -> {
+                    List<Future<?>> terminations = new ArrayList<>();
+                    if (ownsParent) terminations.add(parent.shutdownGracefully());
+                    if (ownsChild) terminations.add(child.shutdownGracefully());
+                    return Futures.allOf(terminations);
+                });
+
+        // The state is reset before the returned future completes, so start() can be called right after it
+        CompletableFuture<Void> stopped = stopping.whenComplete((v, t) -> stopped());
+        if (!stopped.isDone()) stopFuture = stopped;
+        return stopped;
+    }
+
+    private synchronized void stopped() {
+        started = false;
+        stopFuture = null;
+        channels.clear();
     }
 
+    /**
+     * Stop the server gracefully without blocking the calling thread.
+     *
+     * @see #stop()
+     */
     public void stopServer() {
-        if (parent != null) parent.shutdownGracefully();
-        if (child != null) child.shutdownGracefully();
+        stop();
+    }
+
+    /**
+     * Get the handler of a connection from its id.
+     *
+     * @param connectionId The id of the connection (see {@link NetworkHandler#getConnectionId()})
+     * @return The handler of the connection or null if the connection does not exist or has been closed
+     */
+    @Nullable
+    public NetworkHandler getConnection(long connectionId) {
+        return handlers.get(connectionId);
+    }
+
+    /**
+     * Get the handlers of all the open connections.
+     *
+     * @return An unmodifiable view of the handlers of the open connections
+     */
+    public Collection<NetworkHandler> getConnections() {
+        return Collections.unmodifiableCollection(handlers.values());
+    }
+
+    public int getConnectionCount() {
+        return handlers.size();
+    }
+
+    /**
+     * Send a packet to all the connected peers.
+     *
+     * @param packet The packet to send
+     * @throws PacketSendException If the packet cannot be encoded
+     * @see #broadcast(Packet, Predicate)
+     */
+    public void broadcast(@NotNull Packet<?> packet) throws PacketSendException {
+        broadcast(packet, handler -> true);
+    }
+
+    /**
+     * Send a packet to the connected peers accepted by a filter.
+     * The packet is encoded once and the same frame is written to every connection.
+     * The peers that don't know the packet (see {@link PacketProtocol#isSupported(int)}) are skipped.
+     * Write errors are reported to {@link NetworkHandler#exceptionCaught}.
+     *
+     * @param packet The packet to send
+     * @param filter The filter of the connections, e.g. {@link NetworkHandler#isWritable()} to skip slow peers
+     * @throws PacketSendException If the packet cannot be encoded
+     */
+    public void broadcast(@NotNull Packet<?> packet, @NotNull Predicate<NetworkHandler> filter) throws PacketSendException {
+        NetworkMetrics metrics = settings.getMetrics();
+        long start = metrics != null ? System.nanoTime() : 0;
+
+        PacketRegistry registry = settings.getPacketRegistry();
+        ByteBuf frame;
+        try {
+            frame = PacketEncoder.encode(settings.getAllocator(), registry, packet);
+        } catch (EncoderException e) {
+            throw new PacketSendException("Error while encoding packet", e);
+        }
+
+        int id = registry.getPacketId(packet);
+        if (metrics != null) metrics.recordEncodeTime(id, System.nanoTime() - start);
+
+        try {
+            for (NetworkHandler handler : handlers.values()) {
+                Channel channel = handler.getChannel();
+                if (channel == null || !channel.isActive() || !filter.test(handler)) continue;
+
+                PacketProtocol protocol = handler.getProtocol();
+                if (protocol != null && !protocol.isSupported(id)) continue;
+
+                channel.writeAndFlush(frame.retainedDuplicate(), channel.voidPromise());
+                if (handler.getMetrics() != null) handler.getMetrics().recordPacketWritten(id, frame.readableBytes(), -1);
+            }
+        } finally {
+            frame.release();
+        }
     }
 
     @Nullable
@@ -0,0 +1,240 @@
+package it.multicoredev.mclib.network;
+
+import it.multicoredev.mclib.network.LoopbackSupport.EchoListener;
+import it.multicoredev.mclib.network.LoopbackSupport.EchoPacket;
+import it.multicoredev.mclib.network.LoopbackSupport.StateListener;
+import it.multicoredev.mclib.network.LoopbackSupport.TestNetworkHandler;
+import it.multicoredev.mclib.network.client.ClientSocket;
+import it.multicoredev.mclib.network.client.ServerAddress;
+import it.multicoredev.mclib.network.exceptions.DecoderException;
+import it.multicoredev.mclib.network.exceptions.PacketSendException;
+import it.multicoredev.mclib.network.protocol.ConnectionState;
+import it.multicoredev.mclib.network.protocol.PacketRegistry;
+import it.multicoredev.mclib.network.server.ServerSocket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static it.multicoredev.mclib.network.LoopbackSupport.HOST;
+import static it.multicoredev.mclib.network.LoopbackSupport.TIMEOUT_SECONDS;
+import static it.multicoredev.mclib.network.LoopbackSupport.hasCause;
+import static it.multicoredev.mclib.network.LoopbackSupport.poll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+class ClientSocketTest {
+    private PacketRegistry registry;
+    private ServerSocket server;
+    private ClientSocket client;
+    private int port;
+
+    @BeforeEach
+    void setup() throws Exception {
+        registry = LoopbackSupport.registry();
+        port = LoopbackSupport.freePort();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (client != null) client.close().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (server != null) server.stop().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void connectCompletesAfterTheHandshake() throws Exception {
+        startServer(registry);
+        client = new ClientSocket(new ServerAddress(HOST, port), TestNetworkHandler::new, new StateListener(), settings());
+        client.connectAsync().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        EchoPacket response = client.<EchoPacket>request(new EchoPacket(42)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(42, response.getValue());
+    }
+
+    @Test
+    void connectFailsWithTheHandshake() throws Exception {
+        PacketRegistry newer = LoopbackSupport.registry();
+        newer.setProtocolVersion(2, 2);
+        startServer(newer);
+
+        StateListener listener = new StateListener();
+        client = new ClientSocket(new ServerAddress(HOST, port), TestNetworkHandler::new, listener, settings());
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> client.connectAsync().get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(hasCause(e, DecoderException.class), "The connection didn't fail with the protocol handshake");
+        listener.await(ConnectionState.CLOSED);
+    }
+
+    @Test
+    void sendingAfterDisconnectFails() throws Exception {
+        startServer(registry);
+        StateListener listener = new StateListener();
+        client = new ClientSocket(new ServerAddress(HOST, port), TestNetworkHandler::new, listener, settings());
+        client.connectAsync().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(ConnectionState.CONNECTED, poll(listener.states));
+        NetworkHandler handler = client.getNetworkHandler();
+
+        server.stop().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        listener.await(ConnectionState.DISCONNECTED);
+
+        assertThrows(PacketSendException.class, () -> client.sendPacket(new EchoPacket(42)));
+        assertThrows(PacketSendException.class, () -> handler.sendPacket(new EchoPacket(42)));
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> client.request(new EchoPacket(42)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof PacketSendException, "The request didn't fail with the connection");
+    }
+
+    @Test
+    void clientReconnectsWithANewHandler() throws Exception {
+        startServer(registry);
+        StateListener listener = new StateListener();
+        client = new ClientSocket(new ServerAddress(HOST, port), TestNetworkHandler::new, listener, reconnecting(50, 100));
+        client.connectAsync().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        listener.await(ConnectionState.CONNECTED);
+        NetworkHandler first = client.getNetworkHandler();
+
+        client.disconnect();
+        listener.await(ConnectionState.RECONNECTING);
+        listener.await(ConnectionState.CONNECTED);
+
+        assertNotSame(first, client.getNetworkHandler());
+        assertFalse(first.isConnected());
+        EchoPacket response = client.<EchoPacket>request(new EchoPacket(7)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(7, response.getValue());
+    }
+
+    @Test
+    void reconnectionDelayGrowsUpToTheMaximum() throws Exception {
+        TimedListener listener = new TimedListener();
+        client = new ClientSocket(new ServerAddress(HOST, port), TestNetworkHandler::new, listener, reconnecting(100, 200));
+        client.connectAsync();
+
+        long[] attempts = new long[5];
+        for (int i = 0; i < attempts.length; i++) {
+            attempts[i] = poll(listener.reconnections);
+        }
+
+        // Every delay is the doubled delay minus a jitter of up to half of it: 50-100, 100-200, then capped at 100-200
+        long[] minimums = {50, 100, 100, 100};
+        for (int i = 0; i < minimums.length; i++) {
+            long gap = TimeUnit.NANOSECONDS.toMillis(attempts[i + 1] - attempts[i]);
+            assertTrue(gap >= minimums[i], "Attempt " + (i + 1) + " after " + gap + " ms");
+        }
+        long last = TimeUnit.NANOSECONDS.toMillis(attempts[4] - attempts[3]);
+        assertTrue(last < 400, "Delay not capped to the maximum: " + last + " ms");
+    }
+
+    @Test
+    void bufferedRequestsAreReplayedInOrder() throws Exception {
+        startServer(registry);
+        StateListener listener = new StateListener();
+        client = new ClientSocket(new ServerAddress(HOST, port), TestNetworkHandler::new, listener, reconnecting(500, 500).setReplayBufferSize(16));
+        client.connectAsync().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        listener.await(ConnectionState.CONNECTED);
+
+        client.disconnect();
+        listener.await(ConnectionState.DISCONNECTED);
+
+        BlockingQueue<Integer> responses = new LinkedBlockingQueue<>();
+        for (int i = 1; i <= 5; i++) {
+            client.<EchoPacket>request(new EchoPacket(i)).thenAccept(response -> responses.add(response.getValue()));
+        }
+        assertEquals(5, client.getBufferedPackets());
+
+        listener.await(ConnectionState.CONNECTED);
+        client.<EchoPacket>request(new EchoPacket(6)).thenAccept(response -> responses.add(response.getValue()));
+
+        for (int i = 1; i <= 6; i++) {
+            assertEquals(i, poll(responses));
+        }
+        assertEquals(0, client.getBufferedPackets());
+    }
+
+    @Test
+    void bufferedRequestsFailWhenTheClientIsClosed() throws Exception {
+        client = new ClientSocket(new ServerAddress(HOST, port), TestNetworkHandler::new, new StateListener(), reconnecting(500, 500).setReplayBufferSize(16));
+        client.connectAsync();
+
+        CompletableFuture<EchoPacket> request = client.request(new EchoPacket(1));
+        assertEquals(1, client.getBufferedPackets());
+        client.close().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> request.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof PacketSendException, "The buffered request didn't fail with the client");
+        assertEquals(0, client.getBufferedPackets());
+    }
+
+    @Test
+    void serversDoNotBuffer() throws Exception {
+        startServer(registry, settings().setReplayBufferSize(16));
+        client = new ClientSocket(new ServerAddress(HOST, port), TestNetworkHandler::new, new StateListener(), settings());
+        client.connectAsync().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        NetworkHandler handler = server.getConnections().iterator().next();
+
+        client.close().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (handler.isConnected() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThrows(PacketSendException.class, () -> handler.sendPacket(new EchoPacket(1)));
+    }
+
+    private void startServer(PacketRegistry registry) throws Exception {
+        startServer(registry, new NetworkSettings());
+    }
+
+    private void startServer(PacketRegistry registry, NetworkSettings settings) throws Exception {
+        server = new ServerSocket(port, EchoListener.class, TestNetworkHandler.class, settings.setPacketRegistry(registry));
+        server.start().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private NetworkSettings settings() {
+        return new NetworkSettings().setPacketRegistry(registry);
+    }
+
+    private NetworkSettings reconnecting(long initialDelay, long maxDelay) {
+        return settings().setAutoReconnect(true).setReconnectDelay(initialDelay, maxDelay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records when the client starts waiting for a reconnection attempt.
+     */
+    private static class TimedListener extends StateListener {
+        final BlockingQueue<Long> reconnections = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onConnectionStateChanged(ConnectionState state) {
+            if (state == ConnectionState.RECONNECTING) reconnections.add(System.nanoTime());
+            super.onConnectionStateChanged(state);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package it.multicoredev.mclib.network;
+
+import it.multicoredev.mclib.network.LoopbackSupport.EchoListener;
+import it.multicoredev.mclib.network.LoopbackSupport.EchoPacket;
+import it.multicoredev.mclib.network.LoopbackSupport.StateListener;
+import it.multicoredev.mclib.network.LoopbackSupport.TestNetworkHandler;
+import it.multicoredev.mclib.network.client.ClientSocket;
+import it.multicoredev.mclib.network.client.ServerAddress;
+import it.multicoredev.mclib.network.protocol.ConnectionState;
+import it.multicoredev.mclib.network.protocol.PacketRegistry;
+import it.multicoredev.mclib.network.server.ServerSocket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static it.multicoredev.mclib.network.LoopbackSupport.HOST;
+import static it.multicoredev.mclib.network.LoopbackSupport.TIMEOUT_SECONDS;
+import static it.multicoredev.mclib.network.LoopbackSupport.poll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+class KeepAliveLoopbackTest {
+    private static final long IDLE_TIMEOUT_MILLIS = 300;
+
+    private final PacketRegistry registry = LoopbackSupport.registry();
+    private ServerSocket server;
+    private ClientSocket client;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (client != null) client.close().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (server != null) server.stop().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void silentPeerWithoutKeepAliveIsNotEvicted() throws Exception {
+        int port = LoopbackSupport.freePort();
+
+        // The server never pings for writer idleness, only the reader idle ping keeps the connection alive
+        NetworkSettings serverSettings = new NetworkSettings()
+                .setPacketRegistry(registry)
+                .setKeepAlive(0, IDLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        server = new ServerSocket(port, EchoListener.class, TestNetworkHandler.class, serverSettings);
+        server.start().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        StateListener listener = new StateListener();
+        client = new ClientSocket(new ServerAddress(HOST, port), TestNetworkHandler::new, listener, new NetworkSettings().setPacketRegistry(registry));
+        client.connectAsync().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(ConnectionState.CONNECTED, poll(listener.states));
+
+        assertNull(listener.states.poll(IDLE_TIMEOUT_MILLIS * 4, TimeUnit.MILLISECONDS), "The silent peer has been disconnected");
+        EchoPacket response = client.<EchoPacket>request(new EchoPacket(42)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(42, response.getValue());
+    }
+}
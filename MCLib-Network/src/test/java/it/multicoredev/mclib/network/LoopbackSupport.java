@@ -0,0 +1,150 @@
+package it.multicoredev.mclib.network;
+
+import io.netty.channel.ChannelHandlerContext;
+import it.multicoredev.mclib.network.protocol.ConnectionState;
+import it.multicoredev.mclib.network.protocol.Packet;
+import it.multicoredev.mclib.network.protocol.PacketListener;
+import it.multicoredev.mclib.network.protocol.PacketRegistry;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+final class LoopbackSupport {
+    static final long TIMEOUT_SECONDS = 10;
+    static final String HOST = "127.0.0.1";
+
+    private LoopbackSupport() {
+    }
+
+    /**
+     * Get a registry with the {@link EchoPacket}.
+     */
+    static PacketRegistry registry() {
+        PacketRegistry registry = new PacketRegistry();
+        registry.registerPacket(EchoPacket.class, EchoPacket::new);
+        return registry;
+    }
+
+    /**
+     * Get a port free at the moment of the call.
+     */
+    static int freePort() throws IOException {
+        try (java.net.ServerSocket free = new java.net.ServerSocket(0)) {
+            return free.getLocalPort();
+        }
+    }
+
+    static <T> T poll(BlockingQueue<T> queue) throws InterruptedException {
+        T value = queue.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(value, "Nothing received");
+        return value;
+    }
+
+    static boolean hasCause(Throwable t, Class<? extends Throwable> type) {
+        for (; t != null; t = t.getCause()) {
+            if (type.isInstance(t)) return true;
+        }
+        return false;
+    }
+
+    public static class EchoPacket implements Packet<PacketListener> {
+        private int value;
+
+        public EchoPacket() {
+        }
+
+        EchoPacket(int value) {
+            this.value = value;
+        }
+
+        int getValue() {
+            return value;
+        }
+
+        @Override
+        public void encode(PacketByteBuf buf) {
+            buf.writeVarInt(value);
+        }
+
+        @Override
+        public void decode(PacketByteBuf buf) {
+            value = buf.readVarInt();
+        }
+
+        @Override
+        public void processPacket(PacketListener handler) {
+        }
+    }
+
+    /**
+     * Answers the requests with the request itself.
+     */
+    public static class EchoListener implements PacketListener {
+
+        @Override
+        public void setNetworkHandler(NetworkHandler networkHandler) {
+            networkHandler.setRequestHandler(EchoPacket.class, CompletableFuture::completedFuture);
+        }
+    }
+
+    /**
+     * Records the connection states.
+     */
+    static class StateListener implements PacketListener {
+        final BlockingQueue<ConnectionState> states = new LinkedBlockingQueue<>();
+
+        @Override
+        public void setNetworkHandler(NetworkHandler networkHandler) {
+        }
+
+        @Override
+        public void onConnectionStateChanged(ConnectionState state) {
+            states.add(state);
+        }
+
+        /**
+         * Wait until the given state is reached, skipping the states before it.
+         */
+        void await(ConnectionState state) throws InterruptedException {
+            while (poll(states) != state) ;
+        }
+    }
+
+    /**
+     * Records the errors and closes the connection.
+     */
+    public static class TestNetworkHandler extends NetworkHandler {
+        final BlockingQueue<Throwable> errors = new LinkedBlockingQueue<>();
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            errors.add(cause);
+            ctx.close();
+        }
+    }
+}
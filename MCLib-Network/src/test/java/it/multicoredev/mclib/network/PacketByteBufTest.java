@@ -0,0 +1,166 @@
+package it.multicoredev.mclib.network;
+
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+class PacketByteBufTest {
+    private static final int[] INTS = {0, 1, -1, 63, -64, 64, 127, 128, 16383, 16384, Integer.MAX_VALUE, Integer.MIN_VALUE};
+    private static final long[] LONGS = {0, 1, -1, 127, 128, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+
+    @Test
+    void varIntRoundTrip() {
+        for (int value : INTS) {
+            PacketByteBuf buf = buffer();
+            buf.writeVarInt(value);
+
+            assertEquals(PacketByteBuf.varIntSize(value), buf.readableBytes(), "Size of " + value);
+            assertEquals(value, buf.readVarInt());
+            assertFalse(buf.isReadable());
+        }
+    }
+
+    @Test
+    void varIntSizes() {
+        assertEquals(1, size(buffer().writeVarInt(0)));
+        assertEquals(1, size(buffer().writeVarInt(127)));
+        assertEquals(2, size(buffer().writeVarInt(128)));
+        assertEquals(5, size(buffer().writeVarInt(Integer.MAX_VALUE)));
+        assertEquals(5, size(buffer().writeVarInt(-1)));
+        assertEquals(5, size(buffer().writeVarInt(Integer.MIN_VALUE)));
+    }
+
+    @Test
+    void varLongRoundTrip() {
+        for (long value : LONGS) {
+            PacketByteBuf buf = buffer();
+            buf.writeVarLong(value);
+
+            assertEquals(value, buf.readVarLong());
+            assertFalse(buf.isReadable());
+        }
+
+        assertEquals(1, size(buffer().writeVarLong(0)));
+        assertEquals(9, size(buffer().writeVarLong(Long.MAX_VALUE)));
+        assertEquals(10, size(buffer().writeVarLong(-1)));
+        assertEquals(10, size(buffer().writeVarLong(Long.MIN_VALUE)));
+    }
+
+    @Test
+    void signedVarIntRoundTrip() {
+        for (int value : INTS) {
+            PacketByteBuf buf = buffer();
+            buf.writeSignedVarInt(value);
+
+            assertEquals(value, buf.readSignedVarInt());
+            assertFalse(buf.isReadable());
+        }
+
+        assertEquals(1, size(buffer().writeSignedVarInt(-1)));
+        assertEquals(1, size(buffer().writeSignedVarInt(-64)));
+        assertEquals(2, size(buffer().writeSignedVarInt(64)));
+        assertEquals(5, size(buffer().writeSignedVarInt(Integer.MAX_VALUE)));
+        assertEquals(5, size(buffer().writeSignedVarInt(Integer.MIN_VALUE)));
+    }
+
+    @Test
+    void signedVarLongRoundTrip() {
+        for (long value : LONGS) {
+            PacketByteBuf buf = buffer();
+            buf.writeSignedVarLong(value);
+
+            assertEquals(value, buf.readSignedVarLong());
+            assertFalse(buf.isReadable());
+        }
+
+        assertEquals(1, size(buffer().writeSignedVarLong(-1)));
+        assertEquals(10, size(buffer().writeSignedVarLong(Long.MAX_VALUE)));
+        assertEquals(10, size(buffer().writeSignedVarLong(Long.MIN_VALUE)));
+    }
+
+    @Test
+    void varIntLongerThanFiveBytesIsRejected() {
+        PacketByteBuf buf = buffer();
+        for (int i = 0; i < 5; i++) {
+            buf.writeByte(0xFF);
+        }
+        buf.writeByte(0x01);
+
+        assertThrows(IllegalArgumentException.class, buf::readVarInt);
+    }
+
+    @Test
+    void varLongLongerThanTenBytesIsRejected() {
+        PacketByteBuf buf = buffer();
+        for (int i = 0; i < 10; i++) {
+            buf.writeByte(0xFF);
+        }
+        buf.writeByte(0x01);
+
+        assertThrows(IllegalArgumentException.class, buf::readVarLong);
+    }
+
+    @Test
+    void stringRoundTrip() {
+        PacketByteBuf buf = buffer();
+        buf.writeString("");
+        buf.writeString("héllo 世界 😀");
+        buf.writeString("latin", StandardCharsets.ISO_8859_1);
+
+        assertEquals("", buf.readString());
+        assertEquals("héllo 世界 😀", buf.readString());
+        assertEquals("latin", buf.readString(StandardCharsets.ISO_8859_1));
+        assertFalse(buf.isReadable());
+    }
+
+    @Test
+    void stringLongerThanReadableBytesIsRejected() {
+        PacketByteBuf buf = buffer();
+        buf.writeVarInt(10);
+        buf.writeBytes("abc".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IndexOutOfBoundsException.class, buf::readString);
+    }
+
+    @Test
+    void negativeStringLengthIsRejected() {
+        PacketByteBuf buf = buffer();
+        buf.writeVarInt(-1);
+        buf.writeBytes("abc".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IndexOutOfBoundsException.class, buf::readString);
+    }
+
+    private static PacketByteBuf buffer() {
+        return new PacketByteBuf(Unpooled.buffer());
+    }
+
+    private static int size(PacketByteBuf buf) {
+        return buf.readableBytes();
+    }
+}
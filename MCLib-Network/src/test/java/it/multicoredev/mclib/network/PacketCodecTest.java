@@ -0,0 +1,202 @@
+package it.multicoredev.mclib.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ResourceLeakDetector;
+import it.multicoredev.mclib.network.exceptions.DecoderException;
+import it.multicoredev.mclib.network.exceptions.EncoderException;
+import it.multicoredev.mclib.network.exceptions.ProcessException;
+import it.multicoredev.mclib.network.protocol.Packet;
+import it.multicoredev.mclib.network.protocol.PacketListener;
+import it.multicoredev.mclib.network.protocol.PacketRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+class PacketCodecTest {
+    private static final int MAX_FRAME_LENGTH = 1024 * 1024;
+
+    /**
+     * Every buffer allocated by the codecs is counted, so a buffer that is not released fails the test even if
+     * the leak detector didn't get to report it yet.
+     */
+    private UnpooledByteBufAllocator alloc;
+    private PacketRegistry registry;
+
+    @BeforeEach
+    void setup() {
+        assertEquals(ResourceLeakDetector.Level.PARANOID, ResourceLeakDetector.getLevel(), "The codec tests must run with -Dio.netty.leakDetection.level=paranoid");
+
+        alloc = new UnpooledByteBufAllocator(true);
+        registry = new PacketRegistry();
+        registry.registerPacket(TestPacket.class, TestPacket::new);
+    }
+
+    @AfterEach
+    void checkLeaks() {
+        assertEquals(0, alloc.metric().usedHeapMemory(), "Heap buffers not released");
+        assertEquals(0, alloc.metric().usedDirectMemory(), "Direct buffers not released");
+    }
+
+    @Test
+    void roundTrip() {
+        TestPacket packet = new TestPacket(42, "hello", payload(64));
+        assertEquals(packet, roundTrip(packet, -1));
+    }
+
+    @Test
+    void compressedRoundTrip() {
+        TestPacket packet = new TestPacket(-7, "compressed", payload(16 * 1024));
+        assertEquals(packet, roundTrip(packet, 256));
+    }
+
+    @Test
+    void belowCompressionThreshold() {
+        TestPacket packet = new TestPacket(1, "small", payload(8));
+        assertEquals(packet, roundTrip(packet, 256));
+    }
+
+    @Test
+    void requestRoundTrip() {
+        TestPacket packet = new TestPacket(3, "request", payload(32));
+        CorrelatedPacket decoded = (CorrelatedPacket) roundTrip(CorrelatedPacket.request(packet, 1234), -1);
+
+        assertFalse(decoded.isResponse());
+        assertEquals(1234, decoded.getCorrelationId());
+        assertEquals(packet, decoded.getPacket());
+    }
+
+    @Test
+    void errorResponseRoundTrip() {
+        CorrelatedPacket decoded = (CorrelatedPacket) roundTrip(CorrelatedPacket.error(99, "No handler"), -1);
+
+        assertTrue(decoded.isResponse());
+        assertTrue(decoded.isError());
+        assertEquals(99, decoded.getCorrelationId());
+        assertEquals("No handler", decoded.getError());
+    }
+
+    @Test
+    void encodeOutsideOfPipeline() throws Exception {
+        TestPacket packet = new TestPacket(5, "broadcast", payload(128));
+        ByteBuf frame = PacketEncoder.encode(alloc, registry, packet);
+
+        EmbeddedChannel decoder = decoder(-1);
+        assertTrue(decoder.writeInbound(frame));
+        assertEquals(packet, decoder.readInbound());
+        assertFalse(decoder.finish());
+    }
+
+    /**
+     * Encode a message with the outbound pipeline of a connection and decode it with the inbound pipeline.
+     */
+    private Object roundTrip(Object msg, int compressionThreshold) {
+        EmbeddedChannel encoder = new EmbeddedChannel();
+        encoder.config().setAllocator(alloc);
+        if (compressionThreshold >= 0) encoder.pipeline().addLast(new PacketCompressor(compressionThreshold, Deflater.DEFAULT_COMPRESSION));
+        encoder.pipeline().addLast(new PacketEncoder(registry, compressionThreshold < 0, null));
+
+        assertTrue(encoder.writeOutbound(msg));
+        ByteBuf frame = encoder.readOutbound();
+        assertFalse(encoder.finish());
+
+        EmbeddedChannel decoder = decoder(compressionThreshold);
+        assertTrue(decoder.writeInbound(frame));
+        Object decoded = decoder.readInbound();
+        assertFalse(decoder.finish());
+        return decoded;
+    }
+
+    private EmbeddedChannel decoder(int compressionThreshold) {
+        EmbeddedChannel decoder = new EmbeddedChannel();
+        decoder.config().setAllocator(alloc);
+        decoder.pipeline().addLast(new PacketFrameDecoder(MAX_FRAME_LENGTH));
+        if (compressionThreshold >= 0) decoder.pipeline().addLast(new PacketDecompressor(MAX_FRAME_LENGTH));
+        decoder.pipeline().addLast(new PacketDecoder(registry, null));
+        return decoder;
+    }
+
+    private static byte[] payload(int length) {
+        byte[] payload = new byte[length];
+        for (int i = 0; i < length; i++) {
+            payload[i] = (byte) (i % 31);
+        }
+        return payload;
+    }
+
+    public static class TestPacket implements Packet<PacketListener> {
+        private int number;
+        private String text;
+        private byte[] payload;
+
+        public TestPacket() {
+        }
+
+        TestPacket(int number, String text, byte[] payload) {
+            this.number = number;
+            this.text = text;
+            this.payload = payload;
+        }
+
+        @Override
+        public void encode(PacketByteBuf buf) throws EncoderException {
+            buf.writeSignedVarInt(number);
+            buf.writeString(text);
+            buf.writeVarInt(payload.length);
+            buf.writeBytes(payload);
+        }
+
+        @Override
+        public void decode(PacketByteBuf buf) throws DecoderException {
+            number = buf.readSignedVarInt();
+            text = buf.readString();
+            payload = new byte[buf.readVarInt()];
+            buf.readBytes(payload);
+        }
+
+        @Override
+        public void processPacket(PacketListener handler) throws ProcessException {
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TestPacket)) return false;
+
+            TestPacket other = (TestPacket) obj;
+            return number == other.number && text.equals(other.text) && Arrays.equals(payload, other.payload);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * number + text.hashCode();
+        }
+    }
+}
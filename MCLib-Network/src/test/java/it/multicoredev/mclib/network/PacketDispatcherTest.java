@@ -0,0 +1,193 @@
+package it.multicoredev.mclib.network;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import it.multicoredev.mclib.network.exceptions.ProcessException;
+import it.multicoredev.mclib.network.protocol.Packet;
+import it.multicoredev.mclib.network.protocol.PacketListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+class PacketDispatcherTest {
+    private static final int MAX_PENDING = 8;
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final List<Integer> processed = new ArrayList<>();
+    private final List<Boolean> autoRead = new ArrayList<>();
+    private final List<Throwable> errors = new ArrayList<>();
+    private EmbeddedChannel channel;
+    private PacketDispatcher dispatcher;
+
+    @BeforeEach
+    void setup() {
+        TestHandler handler = new TestHandler();
+        handler.setPacketListener(new Listener());
+        channel = new EmbeddedChannel(handler);
+        dispatcher = new PacketDispatcher(channel.pipeline().context(handler), handler, tasks::add, MAX_PENDING);
+    }
+
+    @AfterEach
+    void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void packetsAreProcessedInOrderOnTheExecutor() {
+        dispatch(0, 100);
+        assertTrue(processed.isEmpty(), "Packets processed on the calling thread");
+
+        runTasks();
+        assertEquals(range(0, 100), processed);
+        assertEquals(0, dispatcher.getPending());
+    }
+
+    @Test
+    void processingIsBatched() {
+        dispatch(0, 100);
+        assertEquals(1, tasks.size(), "A task scheduled for every packet");
+
+        tasks.poll().run();
+        assertEquals(64, processed.size());
+        assertEquals(1, tasks.size(), "The rest of the queue was not rescheduled");
+
+        runTasks();
+        assertEquals(range(0, 100), processed);
+    }
+
+    @Test
+    void readingPausesAtTheLimitAndResumesAtHalf() {
+        dispatch(0, MAX_PENDING - 1);
+        assertTrue(channel.config().isAutoRead());
+
+        dispatch(MAX_PENDING - 1, MAX_PENDING);
+        assertFalse(channel.config().isAutoRead(), "Reading not paused at the limit");
+
+        // The rest of the read is still queued over the soft limit
+        dispatch(MAX_PENDING, MAX_PENDING + 4);
+        assertEquals(MAX_PENDING + 4, dispatcher.getPending());
+
+        runTasks();
+        assertEquals(range(0, MAX_PENDING + 4), processed);
+        assertTrue(channel.config().isAutoRead());
+
+        // Reading resumes once half of the limit is pending: 12 - 8 = 4 packets left
+        List<Boolean> expected = new ArrayList<>();
+        for (int i = 0; i < MAX_PENDING + 4; i++) {
+            expected.add(i >= MAX_PENDING);
+        }
+        assertEquals(expected, autoRead);
+    }
+
+    @Test
+    void failingPacketDoesNotStopTheQueue() {
+        dispatcher.dispatch(new ValuePacket(0));
+        dispatcher.dispatch(new ValuePacket(-1));
+        dispatcher.dispatch(new ValuePacket(2));
+
+        runTasks();
+        assertEquals(Arrays.asList(0, 2), processed);
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0) instanceof ProcessException);
+    }
+
+    private void dispatch(int from, int to) {
+        for (int i = from; i < to; i++) {
+            dispatcher.dispatch(new ValuePacket(i));
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> range = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            range.add(i);
+        }
+        return range;
+    }
+
+    private interface ValueListener extends PacketListener {
+
+        void onValue(int value) throws ProcessException;
+    }
+
+    private class Listener implements ValueListener {
+
+        @Override
+        public void setNetworkHandler(NetworkHandler networkHandler) {
+        }
+
+        @Override
+        public void onValue(int value) throws ProcessException {
+            if (value < 0) throw new ProcessException("Negative value");
+
+            processed.add(value);
+            autoRead.add(channel.config().isAutoRead());
+        }
+    }
+
+    private class TestHandler extends NetworkHandler {
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            errors.add(cause);
+        }
+    }
+
+    private static class ValuePacket implements Packet<ValueListener> {
+        private final int value;
+
+        private ValuePacket(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public void encode(PacketByteBuf buf) {
+        }
+
+        @Override
+        public void decode(PacketByteBuf buf) {
+        }
+
+        @Override
+        public void processPacket(ValueListener handler) throws ProcessException {
+            handler.onValue(value);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package it.multicoredev.mclib.network;
+
+import it.multicoredev.mclib.network.LoopbackSupport.EchoListener;
+import it.multicoredev.mclib.network.LoopbackSupport.EchoPacket;
+import it.multicoredev.mclib.network.LoopbackSupport.StateListener;
+import it.multicoredev.mclib.network.LoopbackSupport.TestNetworkHandler;
+import it.multicoredev.mclib.network.client.ClientSocket;
+import it.multicoredev.mclib.network.client.ServerAddress;
+import it.multicoredev.mclib.network.protocol.PacketRegistry;
+import it.multicoredev.mclib.network.server.ServerSocket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static it.multicoredev.mclib.network.LoopbackSupport.HOST;
+import static it.multicoredev.mclib.network.LoopbackSupport.TIMEOUT_SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+class ServerSocketTest {
+    private final PacketRegistry registry = LoopbackSupport.registry();
+    private ServerSocket server;
+    private int port;
+
+    @BeforeEach
+    void setup() throws Exception {
+        port = LoopbackSupport.freePort();
+        server = new ServerSocket(port, EchoListener.class, TestNetworkHandler.class, new NetworkSettings().setPacketRegistry(registry));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.stop().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void stopBeforeStartDoesNothing() throws Exception {
+        assertTrue(server.stop().isDone());
+
+        server.start().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(42, echo(42));
+    }
+
+    @Test
+    void startingTwiceFails() throws Exception {
+        server.start().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertThrows(IllegalStateException.class, server::start);
+    }
+
+    @Test
+    void serverCanBeRestarted() throws Exception {
+        server.start().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(1, echo(1));
+
+        CompletableFuture<Void> stop = server.stop();
+        if (!stop.isDone()) assertSame(stop, server.stop(), "A stop in progress returned another future");
+        stop.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertTrue(server.stop().isDone(), "A stopped server is still stopping");
+
+        server.start().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(2, echo(2));
+
+        server.stop().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        server.start().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(3, echo(3));
+    }
+
+    private int echo(int value) throws Exception {
+        ClientSocket client = new ClientSocket(new ServerAddress(HOST, port), TestNetworkHandler::new, new StateListener(), new NetworkSettings().setPacketRegistry(registry));
+        try {
+            client.connectAsync().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return client.<EchoPacket>request(new EchoPacket(value)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getValue();
+        } finally {
+            client.close().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+}
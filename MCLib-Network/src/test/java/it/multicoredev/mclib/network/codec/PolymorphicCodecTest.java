@@ -0,0 +1,179 @@
+package it.multicoredev.mclib.network.codec;
+
+import com.google.gson.reflect.TypeToken;
+import io.netty.buffer.Unpooled;
+import it.multicoredev.mclib.network.PacketByteBuf;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+class PolymorphicCodecTest {
+    private static final Type STRING_LIST = new TypeToken<List<String>>() {
+    }.getType();
+
+    @AfterEach
+    void tearDown() {
+        PacketCodecs.unregister(Base.class);
+        PacketCodecs.unregister(ArrayList.class);
+    }
+
+    @Test
+    void objectOfTheDeclaredClassIsBinary() {
+        PacketCodecs.registerBinary(Base.class);
+        PacketByteBuf buf = buffer();
+
+        buf.writeObject(new Base(7), Base.class);
+        assertEquals(1, buf.getByte(0), "Not written with the codec");
+
+        Base decoded = buf.readObject(Base.class);
+        assertSame(Base.class, decoded.getClass());
+        assertEquals(7, decoded.value);
+        assertFalse(buf.isReadable());
+    }
+
+    @Test
+    void subclassOfTheDeclaredClassIsDecodedAsDeclared() {
+        PacketCodecs.registerBinary(Base.class);
+        PacketCodecs.registerBinary(Sub.class);
+        try {
+            PacketByteBuf buf = buffer();
+            buf.writeObject(new Sub(7, "extra"), Base.class);
+            buf.writeVarInt(42);
+
+            Base decoded = buf.readObject(Base.class);
+            assertSame(Base.class, decoded.getClass());
+            assertEquals(7, decoded.value);
+            assertEquals(42, buf.readVarInt());
+        } finally {
+            PacketCodecs.unregister(Sub.class);
+        }
+    }
+
+    @Test
+    void collectionDeclaredAsInterface() {
+        PacketCodecs.register(ArrayList.class, new PacketCodec<ArrayList>() {
+            @Override
+            public void encode(PacketByteBuf buf, ArrayList value) {
+                throw new AssertionError("Codec of the runtime class used for a declared List");
+            }
+
+            @Override
+            public ArrayList decode(PacketByteBuf buf) {
+                throw new AssertionError("Codec of the runtime class used for a declared List");
+            }
+        });
+
+        PacketByteBuf buf = buffer();
+        buf.writeObject(new ArrayList<>(Arrays.asList("a", "b")), STRING_LIST);
+        buf.writeObject(new LinkedList<>(Arrays.asList("c")), STRING_LIST);
+        buf.writeObject(null, STRING_LIST);
+
+        assertEquals(Arrays.asList("a", "b"), buf.readObject(STRING_LIST));
+        assertEquals(Arrays.asList("c"), buf.readObject(STRING_LIST));
+        assertNull(buf.readObject(STRING_LIST));
+        assertFalse(buf.isReadable());
+    }
+
+    @Test
+    void untypedObjectIsJson() {
+        PacketCodecs.registerBinary(Base.class);
+        PacketByteBuf buf = buffer();
+
+        buf.writeObject(new Base(7));
+        assertEquals(0, buf.getByte(0), "Untyped object not written as json");
+        assertEquals(7, buf.<Base>readObject(Base.class).value);
+    }
+
+    @Test
+    void nestedSubclassesKeepTheStreamAligned() {
+        Holder holder = new Holder();
+        holder.base = new Sub(1, "first");
+        holder.list = new ArrayList<>(Arrays.asList(new Base(2), new Sub(3, "third"), null));
+        holder.tail = 99;
+
+        PacketCodec<Holder> codec = PacketCodecs.binary(Holder.class);
+        PacketByteBuf buf = buffer();
+        codec.encode(buf, holder);
+        Holder decoded = codec.decode(buf);
+
+        assertSame(Base.class, decoded.base.getClass());
+        assertEquals(1, decoded.base.value);
+        assertEquals(3, decoded.list.size());
+        assertEquals(2, decoded.list.get(0).value);
+        assertSame(Base.class, decoded.list.get(1).getClass());
+        assertEquals(3, decoded.list.get(1).value);
+        assertNull(decoded.list.get(2));
+        assertEquals(99, decoded.tail);
+        assertFalse(buf.isReadable());
+    }
+
+    @Test
+    void binaryCodecRejectsSubclasses() {
+        PacketCodec<Base> codec = PacketCodecs.binary(Base.class);
+        assertThrows(IllegalArgumentException.class, () -> codec.encode(buffer(), new Sub(1, "sub")));
+    }
+
+    private static PacketByteBuf buffer() {
+        return new PacketByteBuf(Unpooled.buffer());
+    }
+
+    public static class Base {
+        int value;
+
+        public Base() {
+        }
+
+        Base(int value) {
+            this.value = value;
+        }
+    }
+
+    public static class Sub extends Base {
+        String extra;
+
+        public Sub() {
+        }
+
+        Sub(int value, String extra) {
+            super(value);
+            this.extra = extra;
+        }
+    }
+
+    public static class Holder {
+        Base base;
+        List<Base> list;
+        int tail;
+    }
+}
@@ -0,0 +1,388 @@
+package it.multicoredev.mclib.network.datagram;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import it.multicoredev.mclib.network.NetworkHandler;
+import it.multicoredev.mclib.network.PacketByteBuf;
+import it.multicoredev.mclib.network.exceptions.DecoderException;
+import it.multicoredev.mclib.network.exceptions.EncoderException;
+import it.multicoredev.mclib.network.exceptions.ProcessException;
+import it.multicoredev.mclib.network.protocol.Packet;
+import it.multicoredev.mclib.network.protocol.PacketListener;
+import it.multicoredev.mclib.network.protocol.PacketRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+class DatagramLoopbackTest {
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private final List<DatagramEndpoint> endpoints = new ArrayList<>();
+    private final BlockingQueue<Integer> received = new LinkedBlockingQueue<>();
+    private final BlockingQueue<byte[]> datagrams = new LinkedBlockingQueue<>();
+    private final PacketRegistry registry = new PacketRegistry();
+    private EventLoopGroup rawGroup;
+    private Channel raw;
+
+    @BeforeEach
+    void setup() throws Exception {
+        registry.registerPacket(ValuePacket.class, ValuePacket::new);
+
+        rawGroup = new NioEventLoopGroup(1);
+        raw = new Bootstrap()
+                .group(rawGroup)
+                .channel(NioDatagramChannel.class)
+                .handler(new SimpleChannelInboundHandler<DatagramPacket>() {
+                    @Override
+                    protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) {
+                        datagrams.add(ByteBufUtil.getBytes(packet.content()));
+                    }
+                })
+                .bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (DatagramEndpoint endpoint : endpoints) {
+            endpoint.stop().get();
+        }
+        raw.close().sync();
+        rawGroup.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).sync();
+    }
+
+    @Test
+    void loopback() throws Exception {
+        DatagramEndpoint server = start(settings(), session -> new ValueListener());
+        DatagramEndpoint client = start(settings(), null);
+
+        DatagramSession session = client.connect(address(server), new ValueListener());
+        session.sendPacket(new ValuePacket(1));
+        session.sendPacket(new ValuePacket(2));
+
+        assertEquals(1, poll(received));
+        assertEquals(2, poll(received));
+    }
+
+    @Test
+    void unflushedPacketsAreBatched() throws Exception {
+        DatagramEndpoint client = start(settings(), null);
+        DatagramSession session = client.connect(address(raw), new ValueListener());
+
+        for (int i = 0; i < 50; i++) {
+            session.sendPacket(new ValuePacket(i), false);
+        }
+        assertNull(datagrams.poll(200, TimeUnit.MILLISECONDS), "Packets sent before the flush");
+
+        session.flush();
+        assertEquals(range(0, 50), values(poll(datagrams)));
+        assertNull(datagrams.poll(200, TimeUnit.MILLISECONDS), "Packets split in many datagrams");
+    }
+
+    @Test
+    void fullBatchesAreSent() throws Exception {
+        DatagramEndpoint client = start(settings().setMaxDatagramSize(64), null);
+        DatagramSession session = client.connect(address(raw), new ValueListener());
+
+        for (int i = 0; i < 50; i++) {
+            session.sendPacket(new ValuePacket(i), false);
+        }
+        session.flush();
+
+        List<Integer> values = new ArrayList<>();
+        int count = 0;
+        while (values.size() < 50) {
+            byte[] datagram = poll(datagrams);
+            assertTrue(datagram.length <= 64, "Datagram larger than the maximum size: " + datagram.length);
+            values.addAll(values(datagram));
+            count++;
+        }
+
+        assertEquals(range(0, 50), values);
+        assertTrue(count > 1, "Packets not split in many datagrams");
+    }
+
+    @Test
+    void staleDatagramsAreDropped() throws Exception {
+        DatagramEndpoint server = start(settings().setSequenced(true), session -> new ValueListener());
+        InetSocketAddress address = address(server);
+
+        send(address, sequenced(5, 5));
+        send(address, sequenced(3, 3));
+        send(address, sequenced(5, 55));
+        send(address, sequenced(6, 6));
+        send(address, sequenced(Integer.MAX_VALUE, 7));
+        send(address, sequenced(Integer.MIN_VALUE, 8));
+
+        assertEquals(5, poll(received));
+        assertEquals(6, poll(received));
+        assertEquals(7, poll(received));
+        assertEquals(8, poll(received));
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void otherRegistriesAreRejected() throws Exception {
+        List<DatagramSession> opened = new CopyOnWriteArrayList<>();
+        DatagramEndpoint server = start(settings(), session -> {
+            opened.add(session);
+            return new ValueListener();
+        });
+
+        PacketRegistry other = new PacketRegistry();
+        other.registerPacket(OtherPacket.class, OtherPacket::new);
+        other.registerPacket(ValuePacket.class, ValuePacket::new);
+        DatagramEndpoint client = start(new DatagramSettings().setPacketRegistry(other), null);
+
+        client.connect(address(server), new ValueListener()).sendPacket(new ValuePacket(1));
+        send(address(server), sequenced(~registry.getFingerprint(), 1, 2));
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS), "Packet of another registry processed");
+        assertTrue(opened.isEmpty(), "Session opened by a peer with another registry");
+
+        send(address(server), Unpooled.wrappedBuffer(new byte[DatagramEndpoint.HEADER_SIZE - 1]));
+        send(address(server), sequenced(2, 3));
+        assertEquals(3, poll(received));
+        assertEquals(3, server.getDroppedDatagrams());
+    }
+
+    @Test
+    void malformedPacketsAreDropped() throws Exception {
+        DatagramEndpoint server = start(settings(), session -> new ValueListener());
+        int id = registry.getPacketId(ValuePacket.class);
+
+        ByteBuf datagram = Unpooled.buffer();
+        datagram.writeByte(0);
+        datagram.writeLong(registry.getFingerprint());
+        writePacket(datagram, id, 1);
+        writePacket(datagram, 9999, 2);
+        writePacket(datagram, id, 3, 0);
+        writePacket(datagram, id, 0x80);
+        writePacket(datagram, id, 4);
+        send(address(server), datagram);
+
+        assertEquals(1, poll(received));
+        assertEquals(4, poll(received));
+
+        datagram = Unpooled.buffer();
+        datagram.writeByte(0);
+        datagram.writeLong(registry.getFingerprint());
+        writePacket(datagram, id, 5);
+        datagram.writeShort(200);
+        writePacket(datagram, id, 6);
+        send(address(server), datagram);
+
+        assertEquals(5, poll(received));
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS), "Packet after a truncated one processed");
+        assertEquals(4, server.getDroppedPackets());
+        assertEquals(0, server.getDroppedDatagrams());
+    }
+
+    @Test
+    void idleSessionsExpire() throws Exception {
+        List<DatagramSession> opened = new CopyOnWriteArrayList<>();
+        DatagramEndpoint server = start(settings().setSessionTimeout(200, TimeUnit.MILLISECONDS), session -> {
+            opened.add(session);
+            return new ValueListener();
+        });
+        DatagramEndpoint client = start(settings().setSessionTimeout(0, TimeUnit.MILLISECONDS), null);
+
+        DatagramSession session = client.connect(address(server), new ValueListener());
+        session.sendPacket(new ValuePacket(1));
+        assertEquals(1, poll(received));
+        assertEquals(1, server.getSessions().size());
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!server.getSessions().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(server.getSessions().isEmpty(), "Session not expired");
+        assertTrue(opened.get(0).isClosed());
+
+        session.sendPacket(new ValuePacket(2));
+        assertEquals(2, poll(received));
+        assertEquals(2, opened.size(), "New session not opened after the expiry");
+    }
+
+    private DatagramSettings settings() {
+        return new DatagramSettings().setPacketRegistry(registry);
+    }
+
+    private DatagramEndpoint start(DatagramSettings settings, Function<DatagramSession, PacketListener> listenerFactory) throws Exception {
+        DatagramEndpoint endpoint = new DatagramEndpoint(0, listenerFactory, settings);
+        endpoints.add(endpoint);
+        endpoint.start().get();
+        return endpoint;
+    }
+
+    private static InetSocketAddress address(DatagramEndpoint endpoint) {
+        return new InetSocketAddress("127.0.0.1", ((InetSocketAddress) endpoint.getLocalAddress()).getPort());
+    }
+
+    private static InetSocketAddress address(Channel channel) {
+        return (InetSocketAddress) channel.localAddress();
+    }
+
+    private void send(InetSocketAddress address, ByteBuf datagram) throws Exception {
+        raw.writeAndFlush(new DatagramPacket(datagram, address)).sync();
+    }
+
+    /**
+     * Build a sequenced datagram with a single packet, the way {@link DatagramSession} does.
+     */
+    private ByteBuf sequenced(int sequence, int value) throws Exception {
+        return sequenced(registry.getFingerprint(), sequence, value);
+    }
+
+    private ByteBuf sequenced(long fingerprint, int sequence, int value) throws Exception {
+        ByteBuf datagram = Unpooled.buffer();
+        datagram.writeByte(DatagramEndpoint.FLAG_SEQUENCED);
+        datagram.writeLong(fingerprint);
+        datagram.writeInt(sequence);
+
+        int start = datagram.writerIndex();
+        datagram.writeShort(0);
+        PacketByteBuf buf = new PacketByteBuf(datagram);
+        buf.writeVarInt(registry.getPacketId(ValuePacket.class));
+        new ValuePacket(value).encode(buf);
+        datagram.setShort(start, datagram.writerIndex() - start - 2);
+        return datagram;
+    }
+
+    /**
+     * Write a packet prefixed by its length, with raw bytes after the id.
+     */
+    private static void writePacket(ByteBuf datagram, int id, int... bytes) {
+        int start = datagram.writerIndex();
+        datagram.writeShort(0);
+        new PacketByteBuf(datagram).writeVarInt(id);
+        for (int b : bytes) {
+            datagram.writeByte(b);
+        }
+        datagram.setShort(start, datagram.writerIndex() - start - 2);
+    }
+
+    /**
+     * Read the values of the packets batched in an unsequenced datagram.
+     */
+    private List<Integer> values(byte[] datagram) throws Exception {
+        ByteBuf content = Unpooled.wrappedBuffer(datagram);
+        assertEquals(0, content.readByte());
+        assertEquals(registry.getFingerprint(), content.readLong());
+
+        List<Integer> values = new ArrayList<>();
+        while (content.isReadable()) {
+            PacketByteBuf buf = new PacketByteBuf(content.readSlice(content.readUnsignedShort()));
+            assertEquals(registry.getPacketId(ValuePacket.class), buf.readVarInt());
+
+            ValuePacket packet = new ValuePacket();
+            packet.decode(buf);
+            values.add(packet.value);
+        }
+        return values;
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> range = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            range.add(i);
+        }
+        return range;
+    }
+
+    private static <T> T poll(BlockingQueue<T> queue) throws InterruptedException {
+        T value = queue.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertNotNull(value, "Nothing received");
+        return value;
+    }
+
+    public interface TestListener extends PacketListener {
+
+        void onValue(int value);
+    }
+
+    private class ValueListener implements TestListener {
+
+        @Override
+        public void setNetworkHandler(NetworkHandler handler) {
+        }
+
+        @Override
+        public void onValue(int value) {
+            received.add(value);
+        }
+    }
+
+    public static class ValuePacket implements Packet<TestListener> {
+        private int value;
+
+        public ValuePacket() {
+        }
+
+        ValuePacket(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public void encode(PacketByteBuf buf) throws EncoderException {
+            buf.writeVarInt(value);
+        }
+
+        @Override
+        public void decode(PacketByteBuf buf) throws DecoderException {
+            value = buf.readVarInt();
+        }
+
+        @Override
+        public void processPacket(TestListener handler) throws ProcessException {
+            handler.onValue(value);
+        }
+    }
+
+    /**
+     * Registered only by the peer with another registry.
+     */
+    public static class OtherPacket extends ValuePacket {
+    }
+}
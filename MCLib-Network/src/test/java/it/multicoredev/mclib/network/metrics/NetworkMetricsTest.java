@@ -0,0 +1,73 @@
+package it.multicoredev.mclib.network.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+class NetworkMetricsTest {
+
+    @Test
+    void queueGaugesAreReadBySnapshots() {
+        NetworkMetrics global = new NetworkMetrics();
+        NetworkMetrics first = global.newConnectionMetrics();
+        NetworkMetrics second = global.newConnectionMetrics();
+        AtomicLong pending = new AtomicLong(3);
+        first.setQueueGauges(pending::get, () -> 100);
+        second.setQueueGauges(() -> 2, () -> 50);
+        first.connectionOpened();
+        second.connectionOpened();
+
+        assertEquals(3, first.snapshot().getPendingPackets());
+        assertEquals(100, first.snapshot().getPendingWriteBytes());
+        assertEquals(5, global.snapshot().getPendingPackets());
+        assertEquals(150, global.snapshot().getPendingWriteBytes());
+
+        pending.set(7);
+        assertEquals(7, first.snapshot().getPendingPackets());
+        assertEquals(9, global.snapshot().getPendingPackets());
+    }
+
+    @Test
+    void closedConnectionsAreNotCounted() {
+        NetworkMetrics global = new NetworkMetrics();
+        NetworkMetrics connection = global.newConnectionMetrics();
+        connection.setQueueGauges(() -> 4, () -> 64);
+
+        assertEquals(0, global.snapshot().getPendingPackets());
+
+        connection.connectionOpened();
+        assertEquals(4, global.snapshot().getPendingPackets());
+
+        connection.connectionClosed();
+        assertEquals(0, global.snapshot().getPendingPackets());
+        assertEquals(0, global.snapshot().getPendingWriteBytes());
+    }
+
+    @Test
+    void queueGaugesBelongToAConnection() {
+        assertThrows(IllegalStateException.class, () -> new NetworkMetrics().setQueueGauges(() -> 0, () -> 0));
+    }
+}
@@ -0,0 +1,210 @@
+package it.multicoredev.mclib.network.processor;
+
+import com.google.gson.Gson;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCounted;
+import it.multicoredev.mclib.network.PacketByteBuf;
+import it.multicoredev.mclib.network.protocol.PacketSchema;
+import it.multicoredev.mclib.network.protocol.PacketSchemas;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+class PacketSchemaProcessorTest {
+    private static final String BASE_SOURCE = String.join("\n",
+            "package schema;",
+            "",
+            "import it.multicoredev.mclib.network.protocol.PacketField;",
+            "import it.multicoredev.mclib.network.protocol.PacketListener;",
+            "import it.multicoredev.mclib.network.protocol.SchemaPacket;",
+            "",
+            "public abstract class BasePacket extends SchemaPacket<PacketListener> {",
+            "    @PacketField(order = 0)",
+            "    long id;",
+            "    @PacketField(order = 3)",
+            "    String name;",
+            "",
+            "    @Override",
+            "    public void processPacket(PacketListener handler) {",
+            "    }",
+            "}");
+    private static final String SAMPLE_SOURCE = String.join("\n",
+            "package schema;",
+            "",
+            "import it.multicoredev.mclib.network.protocol.PacketField;",
+            "",
+            "import java.util.Arrays;",
+            "import java.util.List;",
+            "",
+            "public class SamplePacket extends BasePacket {",
+            "    @PacketField(order = 1, varint = true)",
+            "    int count;",
+            "    @PacketField(order = 2, varint = true)",
+            "    long total;",
+            "    @PacketField(order = 4)",
+            "    Mode mode;",
+            "    @PacketField(order = 5)",
+            "    byte[] data;",
+            "    @PacketField(order = 6)",
+            "    List<String> tags;",
+            "    @PacketField(order = 7)",
+            "    double ratio;",
+            "",
+            "    public enum Mode {",
+            "        FIRST, SECOND, THIRD",
+            "    }",
+            "",
+            "    public static SamplePacket sample() {",
+            "        SamplePacket packet = new SamplePacket();",
+            "        packet.id = 42L;",
+            "        packet.name = \"sample\";",
+            "        packet.count = 300;",
+            "        packet.total = -1L;",
+            "        packet.mode = Mode.THIRD;",
+            "        packet.data = new byte[]{1, 2, 3};",
+            "        packet.tags = Arrays.asList(\"a\", \"b\");",
+            "        packet.ratio = 0.5;",
+            "        return packet;",
+            "    }",
+            "}");
+
+    @TempDir
+    static Path dir;
+    private static Path generated;
+    private static ClassLoader loader;
+
+    @BeforeAll
+    static void compile() throws Exception {
+        Path sources = Files.createDirectories(dir.resolve("src/schema"));
+        generated = Files.createDirectories(dir.resolve("generated"));
+        Path classes = Files.createDirectories(dir.resolve("classes"));
+        Files.write(sources.resolve("BasePacket.java"), BASE_SOURCE.getBytes(StandardCharsets.UTF_8));
+        Files.write(sources.resolve("SamplePacket.java"), SAMPLE_SOURCE.getBytes(StandardCharsets.UTF_8));
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull(compiler, "Tests must run on a JDK");
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            List<String> options = Arrays.asList(
+                    "-classpath", classpath(PacketSchemas.class, ByteBuf.class, ReferenceCounted.class, Gson.class, NotNull.class),
+                    "-d", classes.toString(),
+                    "-s", generated.toString()
+            );
+            JavaCompiler.CompilationTask task = compiler.getTask(null, files, diagnostics, options, null,
+                    files.getJavaFileObjects(sources.resolve("BasePacket.java").toFile(), sources.resolve("SamplePacket.java").toFile()));
+            task.setProcessors(Collections.singletonList(new PacketSchemaProcessor()));
+
+            boolean success = task.call();
+            List<Diagnostic<? extends JavaFileObject>> errors = diagnostics.getDiagnostics().stream()
+                    .filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR)
+                    .collect(Collectors.toList());
+            assertTrue(success && errors.isEmpty(), "Compilation failed: " + errors);
+        }
+
+        loader = new URLClassLoader(new URL[]{classes.toUri().toURL()}, PacketSchemaProcessorTest.class.getClassLoader());
+    }
+
+    @Test
+    void schemasAreGeneratedForConcreteClassesOnly() {
+        assertTrue(Files.exists(generated.resolve("schema/SamplePacket" + PacketSchemas.GENERATED_SUFFIX + ".java")));
+        assertTrue(Files.notExists(generated.resolve("schema/BasePacket" + PacketSchemas.GENERATED_SUFFIX + ".java")));
+    }
+
+    @Test
+    void generatedSchemaIsLoaded() throws Exception {
+        Class<?> packetClass = loader.loadClass("schema.SamplePacket");
+
+        assertEquals(packetClass.getName() + PacketSchemas.GENERATED_SUFFIX, PacketSchemas.get(packetClass).getClass().getName());
+    }
+
+    @Test
+    void generatedSchemaMatchesTheReflectiveOne() throws Exception {
+        Class<?> packetClass = loader.loadClass("schema.SamplePacket");
+        Object packet = packetClass.getMethod("sample").invoke(null);
+
+        byte[] generatedBytes = encode(PacketSchemas.get(packetClass), packet);
+        byte[] reflectiveBytes = encode(PacketSchemas.reflective(packetClass), packet);
+        assertArrayEquals(reflectiveBytes, generatedBytes);
+
+        Object decoded = packetClass.getConstructor().newInstance();
+        decode(PacketSchemas.get(packetClass), decoded, reflectiveBytes);
+        assertArrayEquals(reflectiveBytes, encode(PacketSchemas.reflective(packetClass), decoded));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static byte[] encode(PacketSchema<?> schema, Object packet) {
+        PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+        try {
+            ((PacketSchema<Object>) schema).encode(packet, buf);
+            return ByteBufUtil.getBytes(buf.buf());
+        } finally {
+            buf.buf().release();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void decode(PacketSchema<?> schema, Object packet, byte[] bytes) {
+        PacketByteBuf buf = new PacketByteBuf(Unpooled.wrappedBuffer(bytes));
+        try {
+            ((PacketSchema<Object>) schema).decode(packet, buf);
+            assertEquals(0, buf.readableBytes(), "Bytes left after decoding");
+        } finally {
+            buf.buf().release();
+        }
+    }
+
+    private static String classpath(Class<?>... classes) throws Exception {
+        List<String> entries = new ArrayList<>();
+        for (Class<?> type : classes) {
+            entries.add(new File(type.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath());
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+}
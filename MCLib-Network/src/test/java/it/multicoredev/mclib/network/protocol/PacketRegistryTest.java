@@ -0,0 +1,80 @@
+package it.multicoredev.mclib.network.protocol;
+
+import it.multicoredev.mclib.network.PacketByteBuf;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+class PacketRegistryTest {
+
+    @Test
+    void registeringTheSameIdTwiceIsIgnored() {
+        PacketRegistry registry = new PacketRegistry();
+        registry.registerPacket(FirstPacket.class, 7, FirstPacket::new);
+        registry.registerPacket(FirstPacket.class, 7, FirstPacket::new);
+        registry.registerPacket(SecondPacket.class, SecondPacket::new);
+        registry.registerPacket(SecondPacket.class, SecondPacket::new);
+
+        assertEquals(2, registry.size());
+        assertEquals(7, registry.getStableId(FirstPacket.class));
+        assertEquals(PacketRegistry.stableId(SecondPacket.class), registry.getStableId(SecondPacket.class));
+    }
+
+    @Test
+    void registeringAnotherIdFails() {
+        PacketRegistry registry = new PacketRegistry();
+        registry.registerPacket(FirstPacket.class, 7, FirstPacket::new);
+
+        assertThrows(IllegalArgumentException.class, () -> registry.registerPacket(FirstPacket.class, 8, FirstPacket::new));
+        assertThrows(IllegalArgumentException.class, () -> registry.registerPacket(FirstPacket.class, FirstPacket::new));
+        assertEquals(7, registry.getStableId(FirstPacket.class));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    void registeringAnUsedIdFails() {
+        PacketRegistry registry = new PacketRegistry();
+        registry.registerPacket(FirstPacket.class, 7, FirstPacket::new);
+
+        assertThrows(IllegalArgumentException.class, () -> registry.registerPacket(SecondPacket.class, 7, SecondPacket::new));
+    }
+
+    public static class FirstPacket implements Packet<PacketListener> {
+
+        @Override
+        public void encode(PacketByteBuf buf) {
+        }
+
+        @Override
+        public void decode(PacketByteBuf buf) {
+        }
+
+        @Override
+        public void processPacket(PacketListener handler) {
+        }
+    }
+
+    public static class SecondPacket extends FirstPacket {
+    }
+}
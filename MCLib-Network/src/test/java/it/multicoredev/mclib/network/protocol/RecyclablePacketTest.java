@@ -0,0 +1,101 @@
+package it.multicoredev.mclib.network.protocol;
+
+import it.multicoredev.mclib.network.PacketByteBuf;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Copyright © 2020 by Lorenzo Magni
+ * This file is part of MCLib-network.
+ * MCLib-network is under "The 3-Clause BSD License", you can find a copy <a href="https://opensource.org/licenses/BSD-3-Clause">here</a>.
+ * <p>
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ * <p>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY,
+ * OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+ * OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+class RecyclablePacketTest {
+
+    @Test
+    void recycledPacketsAreReset() {
+        Supplier<? extends Packet<?>> factory = PacketFactories.recycling(CounterPacket::new);
+        CounterPacket packet = (CounterPacket) factory.get();
+        packet.value = 5;
+        packet.recycle();
+
+        assertEquals(0, packet.value);
+    }
+
+    @Test
+    void recyclingTwiceDoesNotResetThePooledPacket() {
+        Supplier<? extends Packet<?>> factory = PacketFactories.recycling(CounterPacket::new);
+        CounterPacket packet = (CounterPacket) factory.get();
+        packet.recycle();
+
+        assertThrows(IllegalStateException.class, packet::recycle);
+        assertEquals(1, packet.resets);
+    }
+
+    @Test
+    void reusedPacketsCanBeRecycledAgain() {
+        Supplier<? extends Packet<?>> factory = PacketFactories.recycling(CounterPacket::new);
+        CounterPacket packet = (CounterPacket) factory.get();
+        packet.recycle();
+
+        CounterPacket reused = (CounterPacket) factory.get();
+        assertSame(packet, reused);
+        assertDoesNotThrow(reused::recycle);
+        assertEquals(2, reused.resets);
+    }
+
+    @Test
+    void packetsOutsideThePoolAreOnlyReset() {
+        CounterPacket packet = new CounterPacket();
+        packet.value = 3;
+        packet.recycle();
+        packet.recycle();
+
+        assertEquals(0, packet.value);
+    }
+
+    public static class CounterPacket extends RecyclablePacket<PacketListener> {
+        private int value;
+        private int resets;
+
+        @Override
+        protected void reset() {
+            value = 0;
+            resets++;
+        }
+
+        @Override
+        public void encode(PacketByteBuf buf) {
+            buf.writeVarInt(value);
+        }
+
+        @Override
+        public void decode(PacketByteBuf buf) {
+            value = buf.readVarInt();
+        }
+
+        @Override
+        public void processPacket(PacketListener handler) {
+        }
+    }
+}